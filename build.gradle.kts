@@ -12,10 +12,35 @@ repositories {
 
 dependencies {}
 
+// Classes that need a newer JDK go to META-INF/versions/17 of a multi-release jar,
+// so the library itself still runs on Java 8.
+val java17 by sourceSets.creating {
+    java.setSrcDirs(listOf("src/main/java17"))
+    compileClasspath += sourceSets.main.get().output
+}
+
+tasks.compileJava {
+    options.release.set(8)
+}
+
+tasks.named<JavaCompile>(java17.compileJavaTaskName) {
+    options.release.set(17)
+    options.compilerArgs.add("--add-modules=jdk.incubator.vector")
+}
+
+tasks.jar {
+    into("META-INF/versions/17") {
+        from(java17.output)
+    }
+    manifest {
+        attributes("Multi-Release" to "true")
+    }
+}
+
 publishing {
     publications {
         create<MavenPublication>("brics-automaton") {
             artifact(tasks.jar)
         }
     }
-}
\ No newline at end of file
+}
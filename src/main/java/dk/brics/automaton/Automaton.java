@@ -38,7 +38,7 @@ import java.io.OptionalDataException;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.URL;
-import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -76,6 +76,8 @@ public class Automaton implements Serializable, Cloneable {
 	/**
 	 * Minimize using Huffman's O(n<sup>2</sup>) algorithm. 
 	 * This is the standard text-book algorithm.
+	 * Automata with more states than set by {@link #setHuffmanMaxStates(int)} 
+	 * are minimized with <code>MINIMIZE_VALMARI</code>.
 	 * @see #setMinimization(int)
 	 */
 	public static final int MINIMIZE_HUFFMAN = 0;
@@ -96,9 +98,21 @@ public class Automaton implements Serializable, Cloneable {
 	 */
 	public static final int MINIMIZE_HOPCROFT = 2;
 	
+	/**
+	 * Minimize using Valmari and Lehtinen's O(m log n) algorithm.
+	 * This is a variant of Hopcroft's algorithm that refines the states and 
+	 * the transitions as partitions of int arrays, and needs less time and 
+	 * memory, in particular for automata with many states and large alphabets.
+	 * @see #setMinimization(int)
+	 */
+	public static final int MINIMIZE_VALMARI = 3;
+	
 	/** Selects minimization algorithm (default: <code>MINIMIZE_HOPCROFT</code>). */
 	static int minimization = MINIMIZE_HOPCROFT;
 	
+	/** Maximal number of states minimized with <code>MINIMIZE_HUFFMAN</code> (default: 10000). */
+	static int huffman_max_states = 10000;
+	
 	/** Initial state of this automaton. */
 	State initial;
 	
@@ -152,6 +166,23 @@ public class Automaton implements Serializable, Cloneable {
 		minimization = algorithm;
 	}
 	
+	/** 
+	 * Sets the maximal number of states of automata that are minimized with 
+	 * Huffman's algorithm (default: 10000). Larger automata are minimized with 
+	 * Valmari and Lehtinen's algorithm instead, since the memory of Huffman's
+	 * algorithm is quadratic in the number of states.
+	 * @param states maximal number of states, at most 2<sup>19</sup> so that 
+	 *               the table of pairs of states fits in an array
+	 * @exception IllegalArgumentException if <code>states</code> is negative or 
+	 *            greater than 2<sup>19</sup>
+	 * @see #MINIMIZE_HUFFMAN
+	 */
+	static public void setHuffmanMaxStates(int states) throws IllegalArgumentException {
+		if (states < 0 || states > 1 << 19)
+			throw new IllegalArgumentException("states must be between 0 and " + (1 << 19));
+		huffman_max_states = states;
+	}
+	
 	/**
 	 * Sets or resets minimize always flag.
 	 * If this flag is set, then {@link #minimize()} will automatically
@@ -283,10 +314,8 @@ public class Automaton implements Serializable, Cloneable {
 			else
 				tr = s.transitions;
 			for (Transition t : tr)
-				if (!visited.contains(t.to)) {
-					visited.add(t.to);
+				if (visited.add(t.to))
 					worklist.add(t.to);
-				}
 		}
 		return visited;
 	}
@@ -396,20 +425,26 @@ public class Automaton implements Serializable, Cloneable {
 	 * Returns sorted array of all interval start points. 
 	 */
 	char[] getStartPoints() {
-		Set<Character> pointset = new HashSet<Character>();
-		for (State s : getStates()) {
-			pointset.add(Character.MIN_VALUE);
+		return getStartPoints(getStates());
+	}
+
+	/**
+	 * Returns sorted array of all interval start points of the given states.
+	 */
+	static char[] getStartPoints(Set<State> states) {
+		BitSet pointset = new BitSet(Character.MAX_VALUE + 1);
+		pointset.set(Character.MIN_VALUE);
+		for (State s : states) {
 			for (Transition t : s.transitions) {
-				pointset.add(t.min);
+				pointset.set(t.min);
 				if (t.max < Character.MAX_VALUE)
-					pointset.add((char)(t.max + 1));
+					pointset.set(t.max + 1);
 			}
 		}
-		char[] points = new char[pointset.size()];
+		char[] points = new char[pointset.cardinality()];
 		int n = 0;
-		for (Character m : pointset)
-			points[n++] = m;
-		Arrays.sort(points);
+		for (int c = pointset.nextSetBit(0); c >= 0; c = pointset.nextSetBit(c + 1))
+			points[n++] = (char)c;
 		return points;
 	}
 	
@@ -886,6 +921,13 @@ public class Automaton implements Serializable, Cloneable {
 	public Automaton intersection(Automaton a) {
 		return BasicOperations.intersection(this, a);
 	}
+
+	/**
+	 * See {@link BasicOperations#intersection(Automaton, Automaton, AutomatonLimits)}.
+	 */
+	public Automaton intersection(Automaton a, AutomatonLimits limits) {
+		return BasicOperations.intersection(this, a, limits);
+	}
 	
 	/**
 	 * See {@link BasicOperations#subsetOf(Automaton, Automaton)}.
@@ -915,6 +957,27 @@ public class Automaton implements Serializable, Cloneable {
 		BasicOperations.determinize(this);
 	}
 
+	/**
+	 * See {@link BasicOperations#determinize(Automaton, AutomatonLimits)}.
+	 */
+	public void determinize(AutomatonLimits limits) {
+		BasicOperations.determinize(this, limits);
+	}
+
+	/**
+	 * See {@link BasicOperations#determinizeParallel(Automaton)}.
+	 */
+	public void determinizeParallel() {
+		BasicOperations.determinizeParallel(this);
+	}
+
+	/**
+	 * See {@link BasicOperations#determinizeParallel(Automaton, AutomatonLimits)}.
+	 */
+	public void determinizeParallel(AutomatonLimits limits) {
+		BasicOperations.determinizeParallel(this, limits);
+	}
+
 	/** 
 	 * See {@link BasicOperations#addEpsilons(Automaton, Collection)}.
 	 */
@@ -1022,6 +1085,13 @@ public class Automaton implements Serializable, Cloneable {
 		return SpecialOperations.homomorph(this, source, dest);
 	}
 	
+	/**
+	 * See {@link SpecialOperations#toUtf8(Automaton)}.
+	 */
+	public Automaton toUtf8() {
+		return SpecialOperations.toUtf8(this);
+	}
+	
 	/**
 	 * See {@link SpecialOperations#projectChars(Automaton, Set)}.
 	 */
@@ -1064,6 +1134,13 @@ public class Automaton implements Serializable, Cloneable {
 		return SpecialOperations.getCommonPrefix(this);
 	}
 	
+	/**
+	 * See {@link SpecialOperations#getCommonFactor(Automaton)}.
+	 */
+	public String getCommonFactor() {
+		return SpecialOperations.getCommonFactor(this);
+	}
+	
 	/**
 	 * See {@link SpecialOperations#prefixClose(Automaton)}.
 	 */
@@ -1098,4 +1175,11 @@ public class Automaton implements Serializable, Cloneable {
 	public Automaton shuffle(Automaton a) {
 		return ShuffleOperations.shuffle(this, a);
 	}
+
+	/** 
+	 * See {@link ShuffleOperations#shuffle(Automaton, Automaton, AutomatonLimits)}.
+	 */
+	public Automaton shuffle(Automaton a, AutomatonLimits limits) {
+		return ShuffleOperations.shuffle(this, a, limits);
+	}
 }
@@ -0,0 +1,76 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+/**
+ * Thrown when an automaton operation exceeds its {@link AutomatonLimits}.
+ * The automata given to the operation are left unchanged, except that they 
+ * may have been determinized as documented for the operation.
+ */
+public class AutomatonLimitException extends RuntimeException {
+
+	static final long serialVersionUID = 10001;
+
+	/**
+	 * The limits that can be exceeded.
+	 */
+	public enum Limit {
+		
+		/** Too many states. */
+		STATES,
+		
+		/** Too many transitions. */
+		TRANSITIONS,
+		
+		/** The deadline has passed. */
+		DEADLINE,
+		
+		/** The limits were cancelled. */
+		CANCELLED,
+		
+		/** The thread was interrupted. */
+		INTERRUPTED
+	}
+
+	private final Limit limit;
+
+	AutomatonLimitException(Limit limit, String message) {
+		super(message);
+		this.limit = limit;
+	}
+
+	/**
+	 * Returns the limit that was exceeded.
+	 */
+	public Limit getLimit() {
+		return limit;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+/**
+ * Limits on the work done by automaton operations that may blow up, 
+ * such as {@link BasicOperations#determinize(Automaton, AutomatonLimits)}.
+ * <p>
+ * The operations check the limits for each state they process and throw an
+ * {@link AutomatonLimitException} when a limit is exceeded, when the limits 
+ * have been cancelled, or when the thread has been interrupted. The number 
+ * of states and transitions is counted per operation, while the deadline and
+ * cancellation apply to all operations that use the same limits. 
+ * <p>
+ * The limits may be cancelled from any thread.
+ */
+public class AutomatonLimits {
+
+	private int max_states = Integer.MAX_VALUE;
+	private long max_transitions = Long.MAX_VALUE;
+	private long deadline; // System.nanoTime() value, valid if has_deadline is set
+	private boolean has_deadline;
+	private volatile boolean cancelled;
+
+	/**
+	 * Constructs new limits without any limits set.
+	 */
+	public AutomatonLimits() {}
+
+	/**
+	 * Sets the maximal number of states of the automata that are constructed.
+	 * @return this object
+	 */
+	public AutomatonLimits setMaxStates(int max_states) {
+		this.max_states = max_states;
+		return this;
+	}
+
+	/**
+	 * Sets the maximal number of transitions of the automata that are constructed.
+	 * @return this object
+	 */
+	public AutomatonLimits setMaxTransitions(long max_transitions) {
+		this.max_transitions = max_transitions;
+		return this;
+	}
+
+	/**
+	 * Sets the deadline to the given number of milliseconds from now.
+	 * @return this object
+	 */
+	public AutomatonLimits setTimeout(long millis) {
+		deadline = System.nanoTime() + millis * 1000000;
+		has_deadline = true;
+		return this;
+	}
+
+	/**
+	 * Cancels the operations that use these limits. Operations that are started 
+	 * afterwards with these limits are cancelled immediately.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns true if these limits have been cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Checks the limits for an operation that has constructed the given number
+	 * of states and transitions so far. The interrupt status of the thread is 
+	 * not cleared.
+	 * @exception AutomatonLimitException if a limit is exceeded
+	 */
+	void check(int states, long transitions) {
+		if (states > max_states)
+			throw new AutomatonLimitException(AutomatonLimitException.Limit.STATES, "more than " + max_states + " states");
+		if (transitions > max_transitions)
+			throw new AutomatonLimitException(AutomatonLimitException.Limit.TRANSITIONS, "more than " + max_transitions + " transitions");
+		if (cancelled)
+			throw new AutomatonLimitException(AutomatonLimitException.Limit.CANCELLED, "cancelled");
+		if (Thread.currentThread().isInterrupted())
+			throw new AutomatonLimitException(AutomatonLimitException.Limit.INTERRUPTED, "interrupted");
+		if (has_deadline && System.nanoTime() - deadline > 0)
+			throw new AutomatonLimitException(AutomatonLimitException.Limit.DEADLINE, "deadline passed");
+	}
+}
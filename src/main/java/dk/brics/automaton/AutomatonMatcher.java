@@ -29,6 +29,7 @@
 
 package dk.brics.automaton;
 
+import java.util.BitSet;
 import java.util.regex.MatchResult;
 
 /**
@@ -41,18 +42,160 @@ import java.util.regex.MatchResult;
  */
 public class AutomatonMatcher implements MatchResult {
 
-	AutomatonMatcher(final CharSequence chars, final RunAutomaton automaton) {
-		this.chars = chars;
+	AutomatonMatcher(final CharSequence chars, final RunAutomaton automaton, final boolean linear) {
+		this(chars, 0, chars.length(), automaton, linear);
+	}
+
+	AutomatonMatcher(final CharSequence chars, final int startOffset, final int endOffset, final RunAutomaton automaton, final boolean linear) {
+		if (startOffset < 0 || endOffset > chars.length() || startOffset > endOffset)
+			throw new IndexOutOfBoundsException("start " + startOffset + ", end " + endOffset + ", length " + chars.length());
 		this.automaton = automaton;
+		this.linear = linear;
+		setInput(chars, startOffset, endOffset);
 	}
 
 	private final RunAutomaton automaton;
-	private final CharSequence chars;
+	private final boolean linear;
+
+	private CharSequence chars;
+
+	/** Offset in {@code chars} of the start of the input, all reported offsets are relative to this. */
+	private int base;
+
+	/** Offset in {@code chars} of the end of the input. */
+	private int limit;
+
+	/** Offsets in {@code chars} of the region where matches are searched. */
+	private int from, to;
+
+	/** Offsets where a match starts, computed by the first linear-time {@code find()}. */
+	private BitSet starts;
+
+	/** If false, {@code starts} must be recomputed for the current region. */
+	private boolean hasStarts;
+
+	/** Last offset where a match can start, -2 if not computed yet. */
+	private int lastStart = -2;
+
+	/** Buffer for the first-char filter. */
+	private char[] buffer;
 
 	private int matchStart = -1;
 
 	private int matchEnd = -1;
 
+	/**
+	 * Sets the input to the given part of a character sequence and resets the match state.
+	 */
+	private void setInput(final CharSequence chars, final int startOffset, final int endOffset) {
+		this.chars = chars;
+		base = startOffset;
+		limit = endOffset;
+		reset();
+	}
+
+	/**
+	 * Resets this matcher to search the whole input from the start.
+	 *
+	 * @return this matcher.
+	 */
+	public AutomatonMatcher reset() {
+		from = base;
+		to = limit;
+		hasStarts = false;
+		lastStart = -2;
+		matchStart = -1;
+		matchEnd = -1;
+		return this;
+	}
+
+	/**
+	 * Resets this matcher to search the given input from the start.
+	 * The matcher keeps its buffers, so reusing a matcher this way
+	 * avoids allocating a new one for each input.
+	 *
+	 * @param s the new input.
+	 * @return this matcher.
+	 */
+	public AutomatonMatcher reset(final CharSequence s) {
+		setInput(s, 0, s.length());
+		return this;
+	}
+
+	/**
+	 * Limits the search to the given region of the input and resets the
+	 * match state. The input is not copied, and reported offsets are still
+	 * relative to the start of the input.
+	 *
+	 * @param start the start of the region (inclusive).
+	 * @param end the end of the region (exclusive).
+	 * @return this matcher.
+	 * @throws IndexOutOfBoundsException if the region is not within the input.
+	 */
+	public AutomatonMatcher region(final int start, final int end) throws IndexOutOfBoundsException {
+		if (start < 0 || end > limit - base || start > end)
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + (limit - base));
+		reset();
+		from = base + start;
+		to = base + end;
+		return this;
+	}
+
+	/**
+	 * Returns the start of the region of this matcher.
+	 *
+	 * @return The start of the region (inclusive).
+	 */
+	public int regionStart() {
+		return from - base;
+	}
+
+	/**
+	 * Returns the end of the region of this matcher.
+	 *
+	 * @return The end of the region (exclusive).
+	 */
+	public int regionEnd() {
+		return to - base;
+	}
+
+	/**
+	 * Finds the remaining matches and stores them in the given array, 
+	 * as long as there is room. Each match is stored as 
+	 * {@code (long)start << 32 | end}. If the array is filled, the next
+	 * invocation continues with the following match.
+	 * <br />
+	 * This also updates the values for the {@code start}, {@code end}, and
+	 * {@code group} methods.
+	 *
+	 * @param spans array that receives the matches.
+	 * @return The number of matches stored.
+	 */
+	public int findAll(final long[] spans) {
+		int n = 0;
+		while (n < spans.length && find())
+			spans[n++] = (long)(matchStart - base) << 32 | (matchEnd - base);
+		return n;
+	}
+
+	/**
+	 * Finds the remaining matches and reports them to the given listener.
+	 * <br />
+	 * This also updates the values for the {@code start}, {@code end}, and
+	 * {@code group} methods.
+	 *
+	 * @param listener receiver of the matches.
+	 * @return The number of matches.
+	 */
+	public int findAll(final MatchListener listener) {
+		int n = 0;
+		while (find()) {
+			listener.match(matchStart - base, matchEnd - base);
+			n++;
+		}
+		return n;
+	}
+
 	/**
 	 * Find the next matching subsequence of the input.
 	 * <br />
@@ -67,36 +210,60 @@ public class AutomatonMatcher implements MatchResult {
 			case -2:
 			return false;
 			case -1:
-			begin = 0;
+			begin = from;
 				break;
 			default:
 			begin = getMatchEnd();
 				// This occurs when a previous find() call matched the empty string. This can happen when the pattern is a* for example.
 				if(begin == getMatchStart()) {
 					begin += 1;
-					if(begin > getChars().length()) {
+					if(begin > to) {
 						setMatch(-2, -2);
 						return false;
 					}
 				}
 		}
 
+		if (linear)
+			return findLinear(begin);
+
 		int match_start;
 		int match_end;
-		if (automaton.isAccept(automaton.getInitialState())) {
+		if (automaton.isAbsorbing(automaton.getInitialState())) {
+			setMatch(begin, to);
+			return true;
+		} else if (automaton.isAccept(automaton.getInitialState())) {
 			match_start = begin;
 			match_end = begin;
 		} else {
 			match_start = -1;
 			match_end = -1;
 		}
-		int l = getChars().length();
-		while (begin < l) {
+		int l = to;
+		int last = getLastStart();
+		FirstCharFilter filter = automaton.prefix_search == null ? automaton.getFirstCharFilter() : null;
+		while (begin < l && begin <= last) {
+			if (automaton.prefix_search != null) {
+				begin = automaton.prefix_search.indexOf(getChars(), begin, l);
+				if (begin == -1 || begin > last)
+					break;
+			} else if (filter != null) {
+				if (buffer == null)
+					buffer = new char[FirstCharFilter.CHUNK];
+				begin = filter.next(getChars(), begin, l, buffer);
+				if (begin == l || begin > last)
+					break;
+			}
 			int p = automaton.getInitialState();
 			for (int i = begin; i < l; i++) {
 				final int new_state = automaton.step(p, getChars().charAt(i));
 				if (new_state == -1) {
 				    break;
+				} else if (automaton.isAbsorbing(new_state)) {
+				    // all continuations match
+				    match_start = begin;
+				    match_end = l;
+				    break;
 				} else if (automaton.isAccept(new_state)) {
 				    // found a match from begin to (i+1)
 				    match_start = begin;
@@ -119,6 +286,78 @@ public class AutomatonMatcher implements MatchResult {
 		}
 	}
 
+	/**
+	 * Finds the leftmost-longest match starting at or after {@code begin}
+	 * using the match start offsets found by a backward scan with the
+	 * reversed automaton.
+	 */
+	private boolean findLinear(final int begin) {
+		if (!hasStarts)
+			findStarts();
+		final int match_start = starts.nextSetBit(begin);
+		if (match_start == -1) {
+			setMatch(-2, -2);
+			return false;
+		}
+		int p = automaton.getInitialState();
+		int match_end = automaton.isAccept(p) ? match_start : -1;
+		int l = to;
+		for (int i = match_start; i < l; i++) {
+			if (automaton.isAbsorbing(p)) {
+				match_end = l;
+				break;
+			}
+			p = automaton.step(p, getChars().charAt(i));
+			if (p == -1)
+				break;
+			else if (automaton.isAccept(p))
+				match_end = i + 1;
+		}
+		setMatch(match_start, match_end);
+		return true;
+	}
+
+	/**
+	 * Returns the last offset in the region where a match can start.
+	 * If the automaton has a required substring, no match starts after its
+	 * last occurrence.
+	 */
+	private int getLastStart() {
+		if (lastStart == -2) {
+			if (automaton.factor_search != null)
+				lastStart = automaton.factor_search.lastIndexOf(getChars(), from, to);
+			else
+				lastStart = to;
+		}
+		return lastStart;
+	}
+
+	/**
+	 * Finds the set of offsets in the region where a match starts. 
+	 * The offsets are found in a single backward scan of the region.
+	 */
+	private void findStarts() {
+		int l = to;
+		if (starts == null)
+			starts = new BitSet(l + 1);
+		else
+			starts.clear();
+		hasStarts = true;
+		if (getLastStart() == -1)
+			return;
+		final RunAutomaton r = automaton.getReverse();
+		int p = r.getInitialState();
+		if (r.isAccept(p))
+			starts.set(l);
+		for (int i = l - 1; i >= from; i--) {
+			p = r.step(p, getChars().charAt(i));
+			if (p == -1)
+				break;
+			else if (r.isAccept(p))
+				starts.set(i);
+		}
+	}
+
 	private void setMatch(final int matchStart, final int matchEnd) throws IllegalArgumentException {
 		if (matchStart > matchEnd) {
 			throw new IllegalArgumentException("Start must be less than or equal to end: " + matchStart + ", " + matchEnd);
@@ -148,7 +387,7 @@ public class AutomatonMatcher implements MatchResult {
 	 */
 	public int end() throws IllegalStateException {
 		matchGood();
-		return matchEnd;
+		return matchEnd - base;
 	}
 
 	/**
@@ -225,7 +464,7 @@ public class AutomatonMatcher implements MatchResult {
 	 */
 	public int start() throws IllegalStateException {
 		matchGood();
-		return matchStart;
+		return matchStart - base;
 	}
 
 	/**
@@ -257,7 +496,9 @@ public class AutomatonMatcher implements MatchResult {
 	 *  {@code AutomatonMatcher}.
 	 */
 	public MatchResult toMatchResult() {
-		final AutomatonMatcher match = new AutomatonMatcher(chars, automaton);
+		final AutomatonMatcher match = new AutomatonMatcher(chars, base, limit, automaton, linear);
+		match.from = this.from;
+		match.to = this.to;
 		match.matchStart = this.matchStart;
 		match.matchEnd = this.matchEnd;
 		return match;
@@ -279,6 +279,20 @@ final public class BasicOperations {
 	 * Complexity: quadratic in number of states.
 	 */
 	static public Automaton intersection(Automaton a1, Automaton a2) {
+		return intersection(a1, a2, null);
+	}
+
+	/**
+	 * Returns an automaton that accepts the intersection of
+	 * the languages of the given automata, within the given limits. 
+	 * The limits apply to the product automaton before dead states are removed.
+	 * Never modifies the input automata languages.
+	 * <p>
+	 * Complexity: quadratic in number of states.
+	 * @param limits limits on the product automaton and the time, null if none
+	 * @exception AutomatonLimitException if a limit is exceeded
+	 */
+	static public Automaton intersection(Automaton a1, Automaton a2, AutomatonLimits limits) {
 		if (a1.isSingleton()) {
 			if (a2.run(a1.singleton))
 				return a1.cloneIfRequired();
@@ -301,7 +315,10 @@ final public class BasicOperations {
 		StatePair p = new StatePair(c.initial, a1.initial, a2.initial);
 		worklist.add(p);
 		newstates.put(p, p);
+		long m = 0;
 		while (worklist.size() > 0) {
+			if (limits != null)
+				limits.check(newstates.size(), m);
 			p = worklist.removeFirst();
 			p.s.accept = p.s1.accept && p.s2.accept;
 			Transition[] t1 = transitions1[p.s1.number];
@@ -322,6 +339,7 @@ final public class BasicOperations {
 						char min = t1[n1].min > t2[n2].min ? t1[n1].min : t2[n2].min;
 						char max = t1[n1].max < t2[n2].max ? t1[n1].max : t2[n2].max;
 						p.s.transitions.add(new Transition(min, max, r.s));
+						m++;
 					}
 			}
 		}
@@ -447,57 +465,66 @@ final public class BasicOperations {
 	 * Complexity: exponential in number of states.
 	 */
 	public static void determinize(Automaton a) {
+		determinize(a, (AutomatonLimits)null);
+	}
+
+	/**
+	 * Determinizes the given automaton within the given limits. 
+	 * <p>
+	 * Complexity: exponential in number of states.
+	 * @param limits limits on the deterministic automaton and the time, null if none
+	 * @exception AutomatonLimitException if a limit is exceeded, the automaton is then unchanged
+	 */
+	public static void determinize(Automaton a, AutomatonLimits limits) {
+		if (a.deterministic || a.isSingleton())
+			return;
+		Set<State> initialset = new HashSet<State>();
+		initialset.add(a.initial);
+		determinize(a, initialset, limits);
+	}
+
+	/**
+	 * Determinizes the given automaton like {@link #determinize(Automaton)},
+	 * but finds the successors of the sets of states of each step of the 
+	 * subset construction in parallel in the common fork-join pool.
+	 * The result is the same up to the numbering of the states.
+	 * <p>
+	 * Complexity: exponential in number of states.
+	 */
+	public static void determinizeParallel(Automaton a) {
+		determinizeParallel(a, null);
+	}
+
+	/**
+	 * Determinizes the given automaton like {@link #determinizeParallel(Automaton)}
+	 * within the given limits. Interrupts of the calling thread are noticed 
+	 * between the steps of the subset construction.
+	 * <p>
+	 * Complexity: exponential in number of states.
+	 * @param limits limits on the deterministic automaton and the time, null if none
+	 * @exception AutomatonLimitException if a limit is exceeded, the automaton is then unchanged
+	 */
+	public static void determinizeParallel(Automaton a, AutomatonLimits limits) {
 		if (a.deterministic || a.isSingleton())
 			return;
 		Set<State> initialset = new HashSet<State>();
 		initialset.add(a.initial);
-		determinize(a, initialset);
+		new SubsetConstruction(initialset).determinizeParallel(a, limits);
 	}
 
 	/** 
 	 * Determinizes the given automaton using the given set of initial states. 
 	 */
 	static void determinize(Automaton a, Set<State> initialset) {
-		char[] points = a.getStartPoints();
-		// subset construction
-		Map<Set<State>, Set<State>> sets = new HashMap<Set<State>, Set<State>>();
-		LinkedList<Set<State>> worklist = new LinkedList<Set<State>>();
-		Map<Set<State>, State> newstate = new HashMap<Set<State>, State>();
-		sets.put(initialset, initialset);
-		worklist.add(initialset);
-		a.initial = new State();
-		newstate.put(initialset, a.initial);
-		while (worklist.size() > 0) {
-			Set<State> s = worklist.removeFirst();
-			State r = newstate.get(s);
-			for (State q : s)
-				if (q.accept) {
-					r.accept = true;
-					break;
-				}
-			for (int n = 0; n < points.length; n++) {
-				Set<State> p = new HashSet<State>();
-				for (State q : s)
-					for (Transition t : q.transitions)
-						if (t.min <= points[n] && points[n] <= t.max)
-							p.add(t.to);
-				if (!sets.containsKey(p)) {
-					sets.put(p, p);
-					worklist.add(p);
-					newstate.put(p, new State());
-				}
-				State q = newstate.get(p);
-				char min = points[n];
-				char max;
-				if (n + 1 < points.length)
-					max = (char)(points[n + 1] - 1);
-				else
-					max = Character.MAX_VALUE;
-				r.transitions.add(new Transition(min, max, q));
-			}
-		}
-		a.deterministic = true;
-		a.removeDeadTransitions();
+		determinize(a, initialset, null);
+	}
+
+	/** 
+	 * Determinizes the given automaton using the given set of initial states
+	 * within the given limits. 
+	 */
+	static void determinize(Automaton a, Set<State> initialset, AutomatonLimits limits) {
+		new SubsetConstruction(initialset).determinize(a, limits);
 	}
 
 	/** 
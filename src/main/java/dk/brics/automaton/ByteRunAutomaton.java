@@ -0,0 +1,143 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finite-state automaton with fast run operation over encoded bytes.
+ * <p>
+ * The automaton is compiled from the UTF-8 (see {@link SpecialOperations#toUtf8(Automaton)})
+ * or ISO-8859-1 encoding of the language of a char automaton, so byte arrays 
+ * and buffers can be matched directly without decoding them into strings.
+ * The inherited char based methods treat each char in u0000-u00ff as a byte.
+ */
+public class ByteRunAutomaton extends RunAutomaton {
+
+	static final long serialVersionUID = 20001;
+
+	int[] bytemap; // map from byte value to char class
+
+	/**
+	 * Constructs a new <code>ByteRunAutomaton</code> that accepts the UTF-8
+	 * encodings of the strings accepted by the given <code>Automaton</code>.
+	 * @param a an automaton
+	 */
+	public ByteRunAutomaton(Automaton a) {
+		this(a, true);
+	}
+
+	/**
+	 * Constructs a new <code>ByteRunAutomaton</code> that accepts the UTF-8 or
+	 * the ISO-8859-1 encodings of the strings accepted by the given 
+	 * <code>Automaton</code>. With ISO-8859-1, strings containing chars 
+	 * outside u0000-u00ff have no encoding and are not accepted.
+	 * @param a an automaton
+	 * @param utf8 if true, use UTF-8; otherwise, use ISO-8859-1
+	 */
+	public ByteRunAutomaton(Automaton a, boolean utf8) {
+		this(a, utf8, false);
+	}
+
+	/**
+	 * Constructs a new <code>ByteRunAutomaton</code>. If <code>search</code>
+	 * is set, the language is prefixed with any sequence of bytes, so that 
+	 * the automaton accepts whenever a match of <code>a</code> ends.
+	 */
+	ByteRunAutomaton(Automaton a, boolean utf8, boolean search) {
+		super(toBytes(a, utf8, search), false);
+		setByteAlphabet();
+	}
+
+	private static Automaton toBytes(Automaton a, boolean utf8, boolean search) {
+		Automaton bytes = BasicAutomata.makeCharRange('\u0000', '\u00ff').repeat();
+		Automaton b;
+		if (utf8)
+			b = SpecialOperations.toUtf8(a);
+		else
+			b = a.intersection(bytes);
+		if (search)
+			b = bytes.concatenate(b);
+		b.minimize();
+		return b;
+	}
+
+	/** 
+	 * Sets byte table for optimal run performance. 
+	 */
+	final void setByteAlphabet() {
+		bytemap = new int[256];
+		for (int b = 0; b < 256; b++)
+			bytemap[b] = getCharClass((char)b);
+	}
+
+	/**
+	 * Returns the state obtained by reading the given byte from the given
+	 * state. Returns -1 if not obtaining any such state.
+	 */
+	public int step(int state, byte b) {
+		return delta(state, bytemap[b & 0xff]);
+	}
+
+	/** 
+	 * Returns true if the given bytes are accepted by this automaton. 
+	 * @param b byte array
+	 * @param offset offset of the first byte to read
+	 * @param length number of bytes to read
+	 */
+	public boolean run(byte[] b, int offset, int length) {
+		int p = initial;
+		int l = offset + length;
+		int u = size - absorbing;
+		for (int i = offset; i < l && p < u; i++) {
+			p = step(p, b[i]);
+			if (p == -1)
+				return false;
+		}
+		return accept[p];
+	}
+
+	/** 
+	 * Returns true if the bytes between the position and the limit of the given
+	 * buffer are accepted by this automaton. The position of the buffer is not 
+	 * changed.
+	 */
+	public boolean run(ByteBuffer b) {
+		int p = initial;
+		int l = b.limit();
+		int u = size - absorbing;
+		for (int i = b.position(); i < l && p < u; i++) {
+			p = step(p, b.get(i));
+			if (p == -1)
+				return false;
+		}
+		return accept[p];
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of pages of two-level char class maps.
+ * <p>
+ * A page maps the 256 chars with the same high byte to their char classes.
+ * Identical pages are shared by all automata in the JVM; a page is released
+ * when no automaton refers to it anymore.
+ */
+final class CharClassPages {
+
+	private static final WeakHashMap<CharClassPages, WeakReference<CharClassPages>> pool = 
+		new WeakHashMap<CharClassPages, WeakReference<CharClassPages>>();
+
+	final byte[] bytes; // classes as unsigned bytes, null if chars are used
+	final char[] chars; // classes as chars, null if bytes are used
+	private final int hash;
+
+	private CharClassPages(byte[] bytes, char[] chars) {
+		this.bytes = bytes;
+		this.chars = chars;
+		hash = bytes != null ? Arrays.hashCode(bytes) : Arrays.hashCode(chars);
+	}
+
+	/**
+	 * Returns the shared page with the given class entries.
+	 */
+	static CharClassPages intern(byte[] bytes) {
+		return intern(new CharClassPages(bytes, null));
+	}
+
+	/**
+	 * Returns the shared page with the given class entries.
+	 */
+	static CharClassPages intern(char[] chars) {
+		return intern(new CharClassPages(null, chars));
+	}
+
+	private static synchronized CharClassPages intern(CharClassPages p) {
+		WeakReference<CharClassPages> r = pool.get(p);
+		if (r != null) {
+			CharClassPages q = r.get();
+			if (q != null)
+				return q;
+		}
+		pool.put(p, new WeakReference<CharClassPages>(p));
+		return p;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof CharClassPages) {
+			CharClassPages p = (CharClassPages)obj;
+			return hash == p.hash && Arrays.equals(bytes, p.bytes) && Arrays.equals(chars, p.chars);
+		} else
+			return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
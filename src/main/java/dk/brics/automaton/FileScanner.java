@@ -0,0 +1,204 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Scanner that finds the matches of an automaton in a file.
+ * <p>
+ * The file is mapped into memory with {@link FileChannel#map} and the bytes
+ * are matched directly with {@link ByteRunAutomaton}s, without copying or
+ * decoding them. Files larger than 2 GB are mapped as a sequence of windows.
+ * <p>
+ * Matches are reported with the same leftmost-longest semantics as 
+ * {@link AutomatonMatcher#find()}, using byte offsets. The input is first 
+ * scanned with an automaton for <code>Sigma* L</code> to find where the next 
+ * match ends, so regions without matches are read only once. In UTF-8 mode, 
+ * matches, including empty ones, start only at char boundaries.
+ * <p>
+ * A <code>FileScanner</code> may be used by several threads at the same time.
+ */
+public class FileScanner {
+
+	static final int WINDOW_BITS = 30;
+
+	private final ByteRunAutomaton automaton;
+	private final ByteRunAutomaton search;
+	private final int window_bits;
+	private final boolean utf8;
+
+	/**
+	 * Constructs a new scanner for the given automaton.
+	 * @param a an automaton
+	 * @param utf8 if true, files are UTF-8 encoded; otherwise, ISO-8859-1
+	 */
+	public FileScanner(Automaton a, boolean utf8) {
+		this(a, utf8, WINDOW_BITS);
+	}
+
+	FileScanner(Automaton a, boolean utf8, int window_bits) {
+		automaton = new ByteRunAutomaton(a, utf8);
+		search = new ByteRunAutomaton(a, utf8, true);
+		this.window_bits = window_bits;
+		this.utf8 = utf8;
+	}
+
+	/**
+	 * Reports all matches in the given file.
+	 * @param file file to scan
+	 * @param listener receiver of the matches
+	 * @exception IOException if input/output related exception occurs
+	 */
+	public void scan(File file, MatchListener listener) throws IOException {
+		RandomAccessFile f = new RandomAccessFile(file, "r");
+		try {
+			scan(f.getChannel(), listener);
+		} finally {
+			f.close();
+		}
+	}
+
+	/**
+	 * Reports all matches in the file of the given channel. 
+	 * The channel position is not changed.
+	 * @param channel channel to scan
+	 * @param listener receiver of the matches
+	 * @exception IOException if input/output related exception occurs
+	 */
+	public void scan(FileChannel channel, MatchListener listener) throws IOException {
+		long size = channel.size();
+		ByteBuffer[] windows = map(channel, window_bits);
+		long begin = 0;
+		while (begin <= size) {
+			long end = findEnd(windows, size, begin);
+			if (end == -1)
+				break;
+			// the leftmost match starts at or before the end of the first match
+			long match_start = begin;
+			long match_end = run(windows, size, match_start);
+			while (match_end == -1) 
+				match_end = run(windows, size, ++match_start);
+			listener.match(match_start, match_end);
+			if (match_end == match_start) {
+				// skip one char after an empty match, not just one byte
+				begin = match_end + 1;
+				if (utf8)
+					while (begin < size && (getByte(windows, begin) & 0xC0) == 0x80)
+						begin++;
+			} else
+				begin = match_end;
+		}
+	}
+
+	/**
+	 * Maps the file of the given channel read-only as a sequence of windows 
+	 * of <code>2^window_bits</code> bytes, the last of which may be shorter.
+	 * The byte at offset <code>n</code> is at index 
+	 * <code>n &amp; (2^window_bits - 1)</code> of window <code>n &gt;&gt;&gt; window_bits</code>.
+	 * @exception IOException if input/output related exception occurs
+	 */
+	static ByteBuffer[] map(FileChannel channel, int window_bits) throws IOException {
+		long size = channel.size();
+		long window = 1L << window_bits;
+		ByteBuffer[] windows = new ByteBuffer[(int)((size + window - 1) >>> window_bits)];
+		for (int n = 0; n < windows.length; n++) {
+			long offset = n * window;
+			windows[n] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(window, size - offset));
+		}
+		return windows;
+	}
+
+	/**
+	 * Returns the byte at the given offset.
+	 */
+	private byte getByte(ByteBuffer[] windows, long offset) {
+		return windows[(int)(offset >>> window_bits)].get((int)(offset & ((1L << window_bits) - 1)));
+	}
+
+	/**
+	 * Returns the offset where the first match that starts at or after 
+	 * <code>begin</code> ends, -1 if there is no such match.
+	 */
+	private long findEnd(ByteBuffer[] windows, long size, long begin) {
+		int p = search.initial;
+		if (search.accept[p])
+			return begin;
+		long mask = (1L << window_bits) - 1;
+		long pos = begin;
+		while (pos < size) {
+			ByteBuffer w = windows[(int)(pos >>> window_bits)];
+			long base = pos & ~mask;
+			int l = w.limit();
+			for (int i = (int)(pos & mask); i < l; i++) {
+				p = search.step(p, w.get(i));
+				if (p == -1)
+					return -1;
+				if (search.accept[p])
+					return base + i + 1;
+			}
+			pos = base + l;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the offset where the longest match starting at the given offset
+	 * ends, -1 if there is no such match.
+	 */
+	private long run(ByteBuffer[] windows, long size, long offset) {
+		int p = automaton.initial;
+		if (automaton.isAbsorbing(p))
+			return size;
+		long max = automaton.accept[p] ? offset : -1;
+		long mask = (1L << window_bits) - 1;
+		long pos = offset;
+		while (pos < size) {
+			ByteBuffer w = windows[(int)(pos >>> window_bits)];
+			long base = pos & ~mask;
+			int l = w.limit();
+			for (int i = (int)(pos & mask); i < l; i++) {
+				p = automaton.step(p, w.get(i));
+				if (p == -1)
+					return max;
+				if (automaton.isAbsorbing(p))
+					return size;
+				if (automaton.accept[p])
+					max = base + i + 1;
+			}
+			pos = base + l;
+		}
+		return max;
+	}
+}
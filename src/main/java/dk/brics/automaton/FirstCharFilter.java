@@ -0,0 +1,173 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.lang.reflect.Constructor;
+import java.nio.CharBuffer;
+
+/**
+ * Skips input positions where no match can start, that is, positions
+ * holding a char without transition from the initial state of an automaton.
+ * The chars with transitions are given as a few intervals.
+ * <p>
+ * A version that tests many chars at a time using the 
+ * <code>jdk.incubator.vector</code> API is included for Java 17 and later
+ * (in <code>META-INF/versions/17</code> of the jar). It is used when the 
+ * module is present, for example by running with 
+ * <code>--add-modules jdk.incubator.vector</code>; otherwise, the plain 
+ * version is used.
+ */
+class FirstCharFilter {
+
+	/** Maximal number of intervals for which a filter is created. */
+	static final int MAX_INTERVALS = 4;
+
+	static final int CHUNK = 1024; // number of chars copied at a time from a string
+
+	private static final Constructor<? extends FirstCharFilter> VECTOR = getVectorConstructor();
+
+	final char[] min; // interval start points
+	final char[] span; // interval lengths minus one
+
+	FirstCharFilter(char[] min, char[] span) {
+		this.min = min;
+		this.span = span;
+	}
+
+	/**
+	 * Returns a filter for the chars that have a transition from the initial
+	 * state of the given automaton, or null if filtering would not pay off,
+	 * that is, if the initial state is accepting or the chars do not form at 
+	 * most <code>MAX_INTERVALS</code> intervals. If no char has a transition,
+	 * the filter skips all positions.
+	 */
+	static FirstCharFilter create(RunAutomaton a) {
+		int p = a.getInitialState();
+		if (a.isAccept(p))
+			return null;
+		char[] points = a.getCharIntervals();
+		char[] min = new char[MAX_INTERVALS];
+		char[] span = new char[MAX_INTERVALS];
+		int n = 0;
+		for (int c = 0; c < points.length; c++) {
+			if (a.delta(p, a.getIntervalClass(c)) == -1)
+				continue;
+			char max = c + 1 < points.length ? (char)(points[c + 1] - 1) : Character.MAX_VALUE;
+			if (n > 0 && min[n - 1] + span[n - 1] + 1 == points[c])
+				span[n - 1] = (char)(max - min[n - 1]);
+			else {
+				if (n == MAX_INTERVALS)
+					return null;
+				min[n] = points[c];
+				span[n] = (char)(max - points[c]);
+				n++;
+			}
+		}
+		char[] m = new char[n];
+		char[] s = new char[n];
+		System.arraycopy(min, 0, m, 0, n);
+		System.arraycopy(span, 0, s, 0, n);
+		if (n == 0) // empty language, no match starts anywhere
+			return new FirstCharFilter(m, s);
+		if (VECTOR != null)
+			try {
+				return VECTOR.newInstance(m, s);
+			} catch (Exception e) {
+				// fall through
+			}
+		return new FirstCharFilter(m, s);
+	}
+
+	/**
+	 * Returns the constructor of the vectorized filter, null if not available.
+	 */
+	private static Constructor<? extends FirstCharFilter> getVectorConstructor() {
+		try {
+			Constructor<? extends FirstCharFilter> c = Class.forName("dk.brics.automaton.VectorFirstCharFilter")
+				.asSubclass(FirstCharFilter.class).getDeclaredConstructor(char[].class, char[].class);
+			c.newInstance(new char[] {'a'}, new char[1]).next(new char[] {'a'}, 0, 1);
+			return c;
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the first index in <code>from</code>..<code>to</code>-1 where 
+	 * the given sequence holds a char in the intervals, <code>to</code> if none.
+	 * Strings are copied in chunks into the given buffer, which must have 
+	 * length <code>CHUNK</code>.
+	 */
+	final int next(CharSequence s, int from, int to, char[] buffer) {
+		if (min.length == 0)
+			return to;
+		if (s instanceof CharBuffer && ((CharBuffer)s).hasArray()) {
+			CharBuffer b = (CharBuffer)s;
+			int offset = b.arrayOffset() + b.position();
+			return next(b.array(), offset + from, offset + to) - offset;
+		} else if (s instanceof String) {
+			for (int i = from; i < to; i += CHUNK) {
+				int l = Math.min(CHUNK, to - i);
+				((String)s).getChars(i, i + l, buffer, 0);
+				int k = next(buffer, 0, l);
+				if (k < l)
+					return i + k;
+			}
+			return to;
+		}
+		for (int i = from; i < to; i++)
+			if (contains(s.charAt(i)))
+				return i;
+		return to;
+	}
+
+	/**
+	 * Returns the first index in <code>from</code>..<code>to</code>-1 where 
+	 * the given array holds a char in the intervals, <code>to</code> if none.
+	 */
+	int next(char[] a, int from, int to) {
+		if (min.length == 0)
+			return to;
+		for (int i = from; i < to; i++)
+			if (contains(a[i]))
+				return i;
+		return to;
+	}
+
+	/**
+	 * Returns true if the given char is in the intervals.
+	 */
+	final boolean contains(char c) {
+		for (int i = 0; i < min.length; i++)
+			if ((char)(c - min[i]) <= span[i])
+				return true;
+		return false;
+	}
+}
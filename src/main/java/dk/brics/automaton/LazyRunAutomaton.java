@@ -0,0 +1,369 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Finite-state automaton with run operation that determinizes on demand.
+ * <p>
+ * Unlike {@link RunAutomaton}, the automaton is not determinized in advance. 
+ * Runs simulate the nondeterministic automaton, and each set of states that is
+ * reached is cached as a deterministic state together with its transitions, so
+ * the cost of determinization is only paid for the parts of the automaton that
+ * the input actually reaches.
+ * <p>
+ * The cache holds a bounded number of states. When it is full, it is flushed.
+ * If the cache is flushed repeatedly within a few characters per cached state,
+ * whether in one long run or over many short runs, the cache is no longer 
+ * flushed, and runs that miss the cache simulate the nondeterministic automaton 
+ * directly without caching from there on, so memory usage stays bounded for 
+ * any automaton. The cache is flushed again once enough input has been read 
+ * from cached states.
+ * <p>
+ * The run methods are synchronized, since they update the cache.
+ */
+public class LazyRunAutomaton {
+
+	static final int UNKNOWN = -2; // transition not computed yet
+	static final int THRASH_FACTOR = 10; // minimal number of chars per cached state between flushes
+	static final int MAX_THRASHES = 3; // number of thrashing flushes before falling back
+	static final int MAX_STATES = 1 << 28; // maximal max_states, so that the hash table size is an int
+
+	// nondeterministic automaton
+	private final boolean[] accept;
+	private final int initial;
+	private final char[] points; // char interval start points
+	private final int[] first; // transitions of state q are first[q]..first[q+1]-1
+	private final int[] from_class; // first char class of each transition
+	private final int[] to_class; // last char class of each transition
+	private final int[] dest; // destination state of each transition
+
+	// cache of deterministic states
+	private final int max_states;
+	private int count; // number of cached states
+	private int[][] sets; // sorted set of states of each cached state
+	private int[] hashes; // hash code of each cached state
+	private boolean[] cached_accept; // acceptance of each cached state
+	private int[] next; // next[p*points.length+c] = transition of cached state p on class c, UNKNOWN if not computed
+	private int[] table; // open addressing hash table from set to cached state + 1
+	private int flushes;
+	private long progress; // chars read from cached states since last flush, in all runs
+	private int thrashes; // number of consecutive flushes with too little progress, at most MAX_THRASHES
+
+	// per run
+	private int[] fallback; // set of states when simulating without cache
+
+	// scratch space for computing successor sets
+	private final int[] mark;
+	private int generation;
+	private final int[] buffer;
+
+	/**
+	 * Constructs a new <code>LazyRunAutomaton</code> with room for 10000 cached states.
+	 * Same as <code>LazyRunAutomaton(a, 10000)</code>.
+	 * @param a an automaton
+	 */
+	public LazyRunAutomaton(Automaton a) {
+		this(a, 10000);
+	}
+
+	/**
+	 * Constructs a new <code>LazyRunAutomaton</code>. The given automaton
+	 * should not be modified afterwards.
+	 * @param a an automaton, not necessarily deterministic
+	 * @param max_states maximal number of cached deterministic states
+	 * @exception IllegalArgumentException if <code>max_states</code> is less than 2 
+	 *            or greater than 2<sup>28</sup>
+	 */
+	public LazyRunAutomaton(Automaton a, int max_states) throws IllegalArgumentException {
+		if (max_states < 2 || max_states > MAX_STATES)
+			throw new IllegalArgumentException("max_states must be between 2 and " + MAX_STATES);
+		this.max_states = max_states;
+		points = a.getStartPoints();
+		Set<State> states = a.getStates();
+		Transition[][] transitions = Automaton.getSortedTransitions(states);
+		int n = states.size();
+		accept = new boolean[n];
+		initial = a.initial.number;
+		first = new int[n + 1];
+		int m = 0;
+		for (State s : states) {
+			accept[s.number] = s.accept;
+			m += s.transitions.size();
+		}
+		from_class = new int[m];
+		to_class = new int[m];
+		dest = new int[m];
+		m = 0;
+		for (int q = 0; q < n; q++) {
+			first[q] = m;
+			for (Transition t : transitions[q]) {
+				from_class[m] = SpecialOperations.findIndex(t.min, points);
+				to_class[m] = SpecialOperations.findIndex(t.max, points);
+				dest[m] = t.to.number;
+				m++;
+			}
+		}
+		first[n] = m;
+		mark = new int[n];
+		buffer = new int[n];
+		table = new int[Integer.highestOneBit(max_states) * 4];
+		flush();
+	}
+
+	/**
+	 * Returns the number of times the cache has been flushed.
+	 */
+	public synchronized int getNumberOfFlushes() {
+		return flushes;
+	}
+
+	/**
+	 * Returns the number of currently cached deterministic states.
+	 */
+	public synchronized int getNumberOfCachedStates() {
+		return count;
+	}
+
+	/** 
+	 * Returns true if the given string is accepted by this automaton. 
+	 */
+	public synchronized boolean run(String s) {
+		int p = start();
+		int l = s.length();
+		int i = 0;
+		while (p != UNKNOWN) {
+			if (p == -1)
+				return false;
+			if (i == l)
+				return cached_accept[p];
+			p = step(p, s.charAt(i++));
+		}
+		int[] set = fallback;
+		for (; i < l && set.length > 0; i++)
+			set = successors(set, getCharClass(s.charAt(i)));
+		return isAccept(set);
+	}
+
+	/**
+	 * Returns the length of the longest accepted run of the given string
+	 * starting at the given offset.
+	 * @param s the string
+	 * @param offset offset into <code>s</code> where the run starts
+	 * @return length of the longest accepted run, -1 if no run is accepted
+	 */
+	public synchronized int run(String s, int offset) {
+		int p = start();
+		int l = s.length();
+		int max = -1;
+		int r = 0;
+		while (p != UNKNOWN) {
+			if (p == -1)
+				return max;
+			if (cached_accept[p])
+				max = r;
+			if (offset == l)
+				return max;
+			p = step(p, s.charAt(offset++));
+			r++;
+		}
+		int[] set = fallback;
+		while (set.length > 0) {
+			if (isAccept(set))
+				max = r;
+			if (offset == l)
+				break;
+			set = successors(set, getCharClass(s.charAt(offset++)));
+			r++;
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the cached initial state, or <code>UNKNOWN</code> if the cache 
+	 * thrashes and the run should start from the set of states in 
+	 * <code>fallback</code> without caching.
+	 */
+	private int start() {
+		fallback = null;
+		int[] set = new int[] {initial};
+		int p = lookup(set);
+		if (p == -1) {
+			if (count == max_states && !flushUnlessThrashing()) {
+				fallback = set;
+				return UNKNOWN;
+			}
+			p = add(set);
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the cached state reached by reading the given char from the
+	 * given cached state, -1 if the set of reached states is empty, or 
+	 * <code>UNKNOWN</code> if the cache thrashes and the run should continue
+	 * from the set of states in <code>fallback</code> without caching.
+	 */
+	private int step(int p, char ch) {
+		int c = getCharClass(ch);
+		int q = next[p * points.length + c];
+		progress++;
+		if (q == UNKNOWN) {
+			int[] set = successors(sets[p], c);
+			if (set.length == 0)
+				q = -1;
+			else {
+				q = lookup(set);
+				if (q == -1) {
+					if (count == max_states) {
+						if (!flushUnlessThrashing()) {
+							fallback = set;
+							return UNKNOWN;
+						}
+						return add(set);
+					}
+					q = add(set);
+				}
+			}
+			next[p * points.length + c] = q;
+		}
+		return q;
+	}
+
+	/**
+	 * Flushes the full cache, unless it has been flushed <code>MAX_THRASHES</code>
+	 * times in a row with less than <code>THRASH_FACTOR</code> chars read per 
+	 * cached state in between.
+	 * @return false if the cache thrashes and was not flushed
+	 */
+	private boolean flushUnlessThrashing() {
+		if (progress >= (long)THRASH_FACTOR * max_states)
+			thrashes = 0;
+		else if (thrashes < MAX_THRASHES)
+			thrashes++;
+		if (thrashes == MAX_THRASHES)
+			return false;
+		flush();
+		progress = 0;
+		return true;
+	}
+
+	/** 
+	 * Gets character class of given char. 
+	 */
+	private int getCharClass(char c) {
+		return SpecialOperations.findIndex(c, points);
+	}
+
+	/**
+	 * Returns true if the given set contains an accept state.
+	 */
+	private boolean isAccept(int[] set) {
+		for (int q : set)
+			if (accept[q])
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the sorted set of states reached by reading a char of the given
+	 * class from the given set of states.
+	 */
+	private int[] successors(int[] set, int c) {
+		if (++generation == 0) {
+			Arrays.fill(mark, 0);
+			generation = 1;
+		}
+		int k = 0;
+		for (int q : set)
+			for (int t = first[q]; t < first[q + 1]; t++)
+				if (from_class[t] <= c && c <= to_class[t] && mark[dest[t]] != generation) {
+					mark[dest[t]] = generation;
+					buffer[k++] = dest[t];
+				}
+		int[] s = Arrays.copyOf(buffer, k);
+		Arrays.sort(s);
+		return s;
+	}
+
+	/**
+	 * Empties the cache.
+	 */
+	private void flush() {
+		if (sets != null)
+			flushes++;
+		count = 0;
+		sets = new int[16][];
+		hashes = new int[16];
+		cached_accept = new boolean[16];
+		next = new int[16 * points.length];
+		Arrays.fill(table, 0);
+	}
+
+	/**
+	 * Returns the cached state for the given set, -1 if not cached.
+	 */
+	private int lookup(int[] set) {
+		int h = Arrays.hashCode(set);
+		int mask = table.length - 1;
+		for (int i = h & mask; table[i] != 0; i = (i + 1) & mask) {
+			int p = table[i] - 1;
+			if (hashes[p] == h && Arrays.equals(sets[p], set))
+				return p;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds a cached state for the given set, which must not be cached already.
+	 */
+	private int add(int[] set) {
+		int p = count++;
+		if (p == sets.length) {
+			int n = Math.min(2 * sets.length, max_states);
+			sets = Arrays.copyOf(sets, n);
+			hashes = Arrays.copyOf(hashes, n);
+			cached_accept = Arrays.copyOf(cached_accept, n);
+			next = Arrays.copyOf(next, n * points.length);
+		}
+		sets[p] = set;
+		hashes[p] = Arrays.hashCode(set);
+		cached_accept[p] = isAccept(set);
+		Arrays.fill(next, p * points.length, (p + 1) * points.length, UNKNOWN);
+		int mask = table.length - 1;
+		int i = hashes[p] & mask;
+		while (table[i] != 0)
+			i = (i + 1) & mask;
+		table[i] = p + 1;
+		return p;
+	}
+}
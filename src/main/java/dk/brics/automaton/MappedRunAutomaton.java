@@ -0,0 +1,290 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Set;
+
+/**
+ * Finite-state automaton with fast run operation whose tables are kept in a
+ * memory-mapped file instead of on the heap.
+ * <p>
+ * This is intended for very large automata: the tables are indexed with 
+ * <code>long</code> offsets, so the number of states times the number of 
+ * char classes may exceed the maximal array size, and the garbage collector 
+ * never has to trace them. Several JVMs that load the same file share one 
+ * copy of the tables through the operating system page cache.
+ * <p>
+ * A file is written with {@link #store(Automaton, File)} or 
+ * {@link #store(RunAutomaton, File)} and mapped with {@link #load(File)}.
+ * The mapping is released when {@link #close()} has been called and the
+ * automaton is no longer reachable.
+ */
+public class MappedRunAutomaton implements Closeable {
+
+	static final int MAGIC = 0x62726963;
+	static final int VERSION = 1;
+	static final int HEADER = 20; // magic, version, size, initial, number of points
+	static final int WINDOW_BITS = 30;
+
+	private int size;
+	private int initial;
+	private char[] points;
+	private char[] classmap; // map from char number to class
+	private long accept_offset; // one byte per state
+	private long transitions_offset; // one int per state and class
+	private ByteBuffer[] windows;
+
+	private MappedRunAutomaton() {}
+
+	/**
+	 * Writes the tables of the given automaton to a file.
+	 * The tables are written one state at a time, so they are never held on 
+	 * the heap. If the automaton is not deterministic, it is determinized first.
+	 * @param a an automaton
+	 * @param file destination file
+	 * @exception IOException if input/output related exception occurs
+	 */
+	public static void store(Automaton a, File file) throws IOException {
+		a.determinize();
+		char[] points = a.getStartPoints();
+		Set<State> ss = a.getStates();
+		Automaton.setStateNumbers(ss);
+		State[] states = new State[ss.size()];
+		for (State s : ss)
+			states[s.number] = s;
+		DataOutputStream out = open(file, states.length, a.initial.number, points);
+		try {
+			for (State s : states)
+				out.writeByte(s.accept ? 1 : 0);
+			pad(out, states.length);
+			for (State s : states) {
+				Transition[] t = s.getSortedTransitionArray(false);
+				for (int c = 0, k = 0; c < points.length; c++) {
+					while (k < t.length && t[k].max < points[c])
+						k++;
+					if (k < t.length && t[k].min <= points[c])
+						out.writeInt(t[k].to.number);
+					else
+						out.writeInt(-1);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the tables of the given automaton to a file.
+	 * @param a an automaton
+	 * @param file destination file
+	 * @exception IOException if input/output related exception occurs
+	 */
+	public static void store(RunAutomaton a, File file) throws IOException {
+		DataOutputStream out = open(file, a.size, a.initial, a.points);
+		try {
+			for (int n = 0; n < a.size; n++)
+				out.writeByte(a.accept[n] ? 1 : 0);
+			pad(out, a.size);
+			for (int n = 0; n < a.size; n++)
+				for (int c = 0; c < a.points.length; c++)
+					out.writeInt(a.delta(n, a.getIntervalClass(c)));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static DataOutputStream open(File file, int size, int initial, char[] points) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(size);
+		out.writeInt(initial);
+		out.writeInt(points.length);
+		for (char p : points)
+			out.writeChar(p);
+		pad(out, 2 * points.length);
+		return out;
+	}
+
+	/** 
+	 * Writes zero bytes to align the next table at a multiple of 4.
+	 */
+	private static void pad(DataOutputStream out, long length) throws IOException {
+		for (long n = length; n % 4 != 0; n++)
+			out.writeByte(0);
+	}
+
+	private static long align(long offset) {
+		return (offset + 3) & ~3L;
+	}
+
+	/**
+	 * Maps the tables of an automaton stored with <code>store</code>.
+	 * The header and the file length are checked; the tables themselves are 
+	 * only read when the automaton is run.
+	 * @param file file with automaton tables
+	 * @exception IOException if input/output related exception occurs or the
+	 *            file does not contain valid automaton tables
+	 */
+	public static MappedRunAutomaton load(File file) throws IOException {
+		RandomAccessFile f = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = f.getChannel();
+			long length = channel.size();
+			MappedRunAutomaton a = new MappedRunAutomaton();
+			a.windows = FileScanner.map(channel, WINDOW_BITS);
+			if (length < HEADER || a.getInt(0) != MAGIC || a.getInt(4) != VERSION)
+				throw new IOException("not an automaton file: " + file);
+			a.size = a.getInt(8);
+			a.initial = a.getInt(12);
+			int n = a.getInt(16);
+			if (a.size < 1 || a.initial < 0 || a.initial >= a.size 
+					|| n < 1 || n > Character.MAX_VALUE - Character.MIN_VALUE + 1)
+				throw new IOException("corrupt automaton file header: " + file);
+			if (length < HEADER + 2L * n)
+				throw new IOException("truncated automaton file: " + file);
+			a.points = new char[n];
+			for (int i = 0; i < n; i++) {
+				a.points[i] = a.windows[0].getChar(HEADER + 2 * i);
+				if (i == 0 ? a.points[i] != Character.MIN_VALUE : a.points[i] <= a.points[i - 1])
+					throw new IOException("corrupt automaton file header: " + file);
+			}
+			a.accept_offset = align(HEADER + 2L * a.points.length);
+			a.transitions_offset = align(a.accept_offset + a.size);
+			if (length < a.transitions_offset + 4L * a.size * a.points.length)
+				throw new IOException("truncated automaton file: " + file);
+			a.classmap = new char[Character.MAX_VALUE - Character.MIN_VALUE + 1];
+			int i = 0;
+			for (int j = 0; j <= Character.MAX_VALUE - Character.MIN_VALUE; j++) {
+				if (i + 1 < a.points.length && j == a.points[i + 1])
+					i++;
+				a.classmap[j] = (char)i;
+			}
+			return a;
+		} finally {
+			f.close();
+		}
+	}
+
+	private int getInt(long offset) {
+		return windows[(int)(offset >>> WINDOW_BITS)].getInt((int)(offset & ((1L << WINDOW_BITS) - 1)));
+	}
+
+	/**
+	 * Releases the mapped tables. The automaton cannot be used afterwards.
+	 */
+	public void close() {
+		windows = null;
+	}
+
+	/** 
+	 * Returns number of states in automaton. 
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/** 
+	 * Returns acceptance status for given state. 
+	 */
+	public boolean isAccept(int state) {
+		long offset = accept_offset + state;
+		return windows[(int)(offset >>> WINDOW_BITS)].get((int)(offset & ((1L << WINDOW_BITS) - 1))) != 0;
+	}
+
+	/** 
+	 * Returns initial state. 
+	 */
+	public int getInitialState() {
+		return initial;
+	}
+
+	/**
+	 * Returns array of character class interval start points. The array should
+	 * not be modified by the caller.
+	 */
+	public char[] getCharIntervals() {
+		return points.clone();
+	}
+
+	/**
+	 * Returns the state obtained by reading the given char from the given
+	 * state. Returns -1 if not obtaining any such state.
+	 */
+	public int step(int state, char c) {
+		return getInt(transitions_offset + 4 * ((long)state * points.length + classmap[c - Character.MIN_VALUE]));
+	}
+
+	/** 
+	 * Returns true if the given string is accepted by this automaton. 
+	 */
+	public boolean run(String s) {
+		int p = initial;
+		int l = s.length();
+		for (int i = 0; i < l; i++) {
+			p = step(p, s.charAt(i));
+			if (p == -1)
+				return false;
+		}
+		return isAccept(p);
+	}
+
+	/**
+	 * Returns the length of the longest accepted run of the given string
+	 * starting at the given offset.
+	 * @param s the string
+	 * @param offset offset into <code>s</code> where the run starts
+	 * @return length of the longest accepted run, -1 if no run is accepted
+	 */
+	public int run(String s, int offset) {
+		int p = initial;
+		int l = s.length();
+		int max = -1;
+		for (int r = 0; offset <= l; offset++, r++) {
+			if (isAccept(p))
+				max = r;
+			if (offset == l)
+				break;
+			p = step(p, s.charAt(offset));
+			if (p == -1)
+				break;
+		}
+		return max;
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Generates Java source for matchers of regular expressions that are fixed 
+ * at build time.
+ * <p>
+ * Each generated class has a static method <code>matches(CharSequence)</code>
+ * that runs the minimal deterministic automaton of the expression. The tables
+ * are stored in string literals, and the generated class does not depend on
+ * this package, so nothing is parsed or constructed at run time.
+ * <p>
+ * Invoke during compilation, for example with a Gradle task like
+ * <pre>
+ * val generateMatchers by tasks.registering(JavaExec::class) {
+ *     classpath = configurations["automaton"]
+ *     mainClass.set("dk.brics.automaton.MatcherGenerator")
+ *     args("src/main/patterns.properties", "build/generated/matchers", "com.example.patterns")
+ * }
+ * sourceSets.main { java.srcDir(generateMatchers.map { "build/generated/matchers" }) }
+ * </pre>
+ */
+final public class MatcherGenerator {
+
+	static final int CHUNK = 8192; // chars per string literal, keeps each literal below 64K bytes in the class file
+
+	private MatcherGenerator() {}
+
+	/**
+	 * Generates a matcher class for each entry of a UTF-8 encoded properties file. 
+	 * The keys are class names and the values are regular expressions in the 
+	 * syntax of {@link RegExp} with all optional features enabled.
+	 * <p>
+	 * Arguments: <i>properties file</i> <i>output directory</i> [<i>package name</i>]
+	 * @exception IOException if input/output related exception occurs
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: java dk.brics.automaton.MatcherGenerator <properties file> <output directory> [<package name>]");
+			System.exit(1);
+		}
+		Properties patterns = new Properties();
+		InputStream in = new FileInputStream(args[0]);
+		try {
+			patterns.load(new InputStreamReader(in, "UTF-8"));
+		} finally {
+			in.close();
+		}
+		String packagename = args.length == 3 ? args[2] : null;
+		File dir = new File(args[1]);
+		if (packagename != null)
+			dir = new File(dir, packagename.replace('.', File.separatorChar));
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("cannot create directory " + dir);
+		for (String name : new TreeSet<String>(patterns.stringPropertyNames())) {
+			String regexp = patterns.getProperty(name);
+			Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, name + ".java")), "UTF-8");
+			try {
+				generate(new RegExp(regexp).toAutomaton(), regexp, packagename, name, out);
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes the source of a matcher class for the given automaton.
+	 * @param a an automaton
+	 * @param regexp the regular expression of the automaton, used in the documentation 
+	 *               and as value of the <code>REGEXP</code> field (may be null)
+	 * @param packagename package of the class (may be null)
+	 * @param classname name of the class
+	 * @param out receiver of the source
+	 * @exception IOException if input/output related exception occurs
+	 */
+	public static void generate(Automaton a, String regexp, String packagename, String classname, Appendable out) throws IOException {
+		RunAutomaton r = new RunAutomaton(a, RunAutomaton.TABLEIZE_NONE);
+		int size = r.getSize();
+		if (size >= Character.MAX_VALUE)
+			throw new IllegalArgumentException("too many states");
+		char[] points = r.getCharIntervals();
+		char[] transitions = new char[size * points.length];
+		char[] accept = new char[size];
+		for (int p = 0; p < size; p++) {
+			accept[p] = r.isAccept(p) ? (char)1 : (char)0;
+			for (int c = 0; c < points.length; c++)
+				transitions[p * points.length + c] = (char)(r.delta(p, r.getIntervalClass(c)) + 1);
+		}
+		if (packagename != null)
+			out.append("package ").append(packagename).append(";\n\n");
+		out.append("/**\n");
+		if (regexp != null)
+			out.append(" * Matcher for the regular expression {@link #REGEXP}.\n");
+		else
+			out.append(" * Matcher for a regular language.\n");
+		out.append(" * Generated by dk.brics.automaton.MatcherGenerator.\n");
+		out.append(" */\n");
+		out.append("public final class ").append(classname).append(" {\n\n");
+		if (regexp != null) {
+			out.append("\t/** The regular expression. */\n");
+			out.append("\tpublic static final String REGEXP = ");
+			appendLiteral(regexp.toCharArray(), 0, regexp.length(), out);
+			out.append(";\n\n");
+		}
+		out.append("\tprivate static final int INITIAL = ").append(Integer.toString(r.getInitialState())).append(";\n");
+		out.append("\tprivate static final char[] POINTS = decode(");
+		appendLiterals(points, out);
+		out.append(");\n");
+		out.append("\tprivate static final char[] ACCEPT = decode(");
+		appendLiterals(accept, out);
+		out.append(");\n");
+		out.append("\tprivate static final char[] TRANSITIONS = decode(");
+		appendLiterals(transitions, out);
+		out.append(");\n");
+		out.append("\tprivate static final int[] ASCII = new int[128];\n\n");
+		out.append("\tstatic {\n");
+		out.append("\t\tfor (char c = 0; c < 128; c++)\n");
+		out.append("\t\t\tASCII[c] = getCharClass(c);\n");
+		out.append("\t}\n\n");
+		out.append("\tprivate ").append(classname).append("() {}\n\n");
+		out.append("\t/**\n");
+		out.append("\t * Returns true if the given string matches the regular expression.\n");
+		out.append("\t */\n");
+		out.append("\tpublic static boolean matches(CharSequence s) {\n");
+		out.append("\t\tint p = INITIAL;\n");
+		out.append("\t\tfor (int i = 0, l = s.length(); i < l; i++) {\n");
+		out.append("\t\t\tchar c = s.charAt(i);\n");
+		out.append("\t\t\tp = TRANSITIONS[p * POINTS.length + (c < 128 ? ASCII[c] : getCharClass(c))] - 1;\n");
+		out.append("\t\t\tif (p == -1)\n");
+		out.append("\t\t\t\treturn false;\n");
+		out.append("\t\t}\n");
+		out.append("\t\treturn ACCEPT[p] != 0;\n");
+		out.append("\t}\n\n");
+		out.append("\tprivate static int getCharClass(char c) {\n");
+		out.append("\t\tint a = 0;\n");
+		out.append("\t\tint b = POINTS.length;\n");
+		out.append("\t\twhile (b - a > 1) {\n");
+		out.append("\t\t\tint d = (a + b) >>> 1;\n");
+		out.append("\t\t\tif (POINTS[d] > c)\n");
+		out.append("\t\t\t\tb = d;\n");
+		out.append("\t\t\telse\n");
+		out.append("\t\t\t\ta = d;\n");
+		out.append("\t\t}\n");
+		out.append("\t\treturn a;\n");
+		out.append("\t}\n\n");
+		out.append("\tprivate static char[] decode(String... parts) {\n");
+		out.append("\t\tStringBuilder b = new StringBuilder();\n");
+		out.append("\t\tfor (String s : parts)\n");
+		out.append("\t\t\tb.append(s);\n");
+		out.append("\t\treturn b.toString().toCharArray();\n");
+		out.append("\t}\n");
+		out.append("}\n");
+	}
+
+	/**
+	 * Appends the given chars as a comma separated list of string literals of
+	 * at most <code>CHUNK</code> chars.
+	 */
+	private static void appendLiterals(char[] cs, Appendable out) throws IOException {
+		for (int i = 0; i < cs.length || i == 0; i += CHUNK) {
+			if (i > 0)
+				out.append(",\n\t\t");
+			appendLiteral(cs, i, Math.min(cs.length, i + CHUNK), out);
+		}
+	}
+
+	/**
+	 * Appends a string literal of the given chars. Control chars, quotes and 
+	 * backslashes are written as octal escapes and other non-ASCII chars as 
+	 * unicode escapes, so no escape becomes a line terminator or quote.
+	 */
+	private static void appendLiteral(char[] cs, int from, int to, Appendable out) throws IOException {
+		out.append('"');
+		for (int i = from; i < to; i++) {
+			char c = cs[i];
+			if (c < 0x20 || c == 0x7f || c == '"' || c == '\\')
+				out.append('\\').append(Character.forDigit(c >> 6, 8)).append(Character.forDigit((c >> 3) & 7, 8)).append(Character.forDigit(c & 7, 8));
+			else if (c < 0x80)
+				out.append(c);
+			else {
+				String h = Integer.toHexString(c);
+				out.append("\\u");
+				for (int k = h.length(); k < 4; k++)
+					out.append('0');
+				out.append(h);
+			}
+		}
+		out.append('"');
+	}
+}
@@ -30,7 +30,7 @@
 package dk.brics.automaton;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Set;
 
@@ -54,6 +54,9 @@ final public class MinimizationOperations {
 			case Automaton.MINIMIZE_BRZOZOWSKI:
 				minimizeBrzozowski(a);
 				break;
+			case Automaton.MINIMIZE_VALMARI:
+				minimizeValmari(a);
+				break;
 			default:
 				minimizeHopcroft(a);
 			}
@@ -61,7 +64,23 @@ final public class MinimizationOperations {
 		a.recomputeHashCode();
 	}
 	
-	private static boolean statesAgree(Transition[][] transitions, boolean[][] mark, int n1, int n2) {
+	/**
+	 * Returns the index of the given pair of distinct states in a triangular table.
+	 */
+	private static long getPair(int n1, int n2) {
+		if (n1 > n2) {
+			int t = n1;
+			n1 = n2;
+			n2 = t;
+		}
+		return (long)n2 * (n2 - 1) / 2 + n1;
+	}
+
+	private static boolean isMarked(long[] mark, long pair) {
+		return (mark[(int)(pair >>> 6)] & (1L << pair)) != 0;
+	}
+
+	private static boolean statesAgree(Transition[][] transitions, long[] mark, int n1, int n2) {
 		Transition[] t1 = transitions[n1];
 		Transition[] t2 = transitions[n2];
 		for (int k1 = 0, k2 = 0; k1 < t1.length && k2 < t2.length;) {
@@ -72,12 +91,7 @@ final public class MinimizationOperations {
 			else {
 				int m1 = t1[k1].to.number;
 				int m2 = t2[k2].to.number;
-				if (m1 > m2) {
-					int t = m1;
-					m1 = m2;
-					m2 = t;
-				}
-				if (mark[m1][m2])
+				if (m1 != m2 && isMarked(mark, getPair(m1, m2)))
 					return false;
 				if (t1[k1].max < t2[k2].max)
 					k1++;
@@ -88,7 +102,7 @@ final public class MinimizationOperations {
 		return true;
 	}
 
-	private static void addTriggers(Transition[][] transitions, ArrayList<ArrayList<HashSet<IntPair>>> triggers, int n1, int n2) {
+	private static void addTriggers(Transition[][] transitions, Triggers triggers, int n1, int n2) {
 		Transition[] t1 = transitions[n1];
 		Transition[] t2 = transitions[n2];
 		for (int k1 = 0, k2 = 0; k1 < t1.length && k2 < t2.length;) {
@@ -97,18 +111,8 @@ final public class MinimizationOperations {
 			else if (t2[k2].max < t1[k1].min)
 				k2++;
 			else {
-				if (t1[k1].to != t2[k2].to) {
-					int m1 = t1[k1].to.number;
-					int m2 = t2[k2].to.number;
-					if (m1 > m2) {
-						int t = m1;
-						m1 = m2;
-						m2 = t;
-					}
-					if (triggers.get(m1).get(m2) == null)
-						triggers.get(m1).set(m2, new HashSet<IntPair>());
-					triggers.get(m1).get(m2).add(new IntPair(n1, n2));
-				}
+				if (t1[k1].to != t2[k2].to)
+					triggers.add(getPair(t1[k1].to.number, t2[k2].to.number), n1, n2);
 				if (t1[k1].max < t2[k2].max)
 					k1++;
 				else
@@ -117,19 +121,22 @@ final public class MinimizationOperations {
 		}
 	}
 
-	private static void markPair(boolean[][] mark, ArrayList<ArrayList<HashSet<IntPair>>> triggers, int n1, int n2) {
-		mark[n1][n2] = true;
-		if (triggers.get(n1).get(n2) != null) {
-			for (IntPair p : triggers.get(n1).get(n2)) {
-				int m1 = p.n1;
-				int m2 = p.n2;
-				if (m1 > m2) {
-					int t = m1;
-					m1 = m2;
-					m2 = t;
+	private static void markPair(long[] mark, Triggers triggers, int n1, int n2) {
+		long p = getPair(n1, n2);
+		mark[(int)(p >>> 6)] |= 1L << p;
+		IntStack pending = new IntStack();
+		pending.push(n1);
+		pending.push(n2);
+		while (pending.size > 0) {
+			int m2 = pending.pop();
+			int m1 = pending.pop();
+			for (int e = triggers.getFirst(getPair(m1, m2)); e != -1; e = triggers.next[e]) {
+				p = getPair(triggers.n1[e], triggers.n2[e]);
+				if (!isMarked(mark, p)) {
+					mark[(int)(p >>> 6)] |= 1L << p;
+					pending.push(triggers.n1[e]);
+					pending.push(triggers.n2[e]);
 				}
-				if (!mark[m1][m2])
-					markPair(mark, triggers, m1, m2);
 			}
 		}
 	}
@@ -141,37 +148,43 @@ final public class MinimizationOperations {
 	
 	/** 
 	 * Minimizes the given automaton using Huffman's algorithm. 
+	 * The pairs of distinct states are marked in a triangular bit table, so 
+	 * the memory is quadratic in the number of states. Automata with more 
+	 * states than set by {@link Automaton#setHuffmanMaxStates(int)} are 
+	 * minimized with {@link #minimizeValmari(Automaton)} instead.
 	 */
 	public static void minimizeHuffman(Automaton a) {
 		a.determinize();
 		a.totalize();
 		Set<State> ss = a.getStates();
+		if (ss.size() > Automaton.huffman_max_states) {
+			minimizeValmari(a);
+			return;
+		}
 		Transition[][] transitions = new Transition[ss.size()][];
 		State[] states = ss.toArray(new State[ss.size()]);
-		boolean[][] mark = new boolean[states.length][states.length];
-		ArrayList<ArrayList<HashSet<IntPair>>> triggers = new ArrayList<ArrayList<HashSet<IntPair>>>();
-		for (int n1 = 0; n1 < states.length; n1++) {
-			ArrayList<HashSet<IntPair>> v = new ArrayList<HashSet<IntPair>>();
-			initialize(v, states.length);
-			triggers.add(v);
-		}
+		long[] mark = new long[(int)(((long)states.length * (states.length - 1) / 2 + 63) >>> 6)];
+		Triggers triggers = new Triggers();
 		// initialize marks based on acceptance status and find transition arrays
 		for (int n1 = 0; n1 < states.length; n1++) {
 			states[n1].number = n1;
 			transitions[n1] = states[n1].getSortedTransitionArray(false);
-			for (int n2 = n1 + 1; n2 < states.length; n2++)
-				if (states[n1].accept != states[n2].accept)
-					mark[n1][n2] = true;
+			for (int n2 = 0; n2 < n1; n2++)
+				if (states[n1].accept != states[n2].accept) {
+					long p = getPair(n1, n2);
+					mark[(int)(p >>> 6)] |= 1L << p;
+				}
 		}
 		// for all pairs, see if states agree
 		for (int n1 = 0; n1 < states.length; n1++)
 			for (int n2 = n1 + 1; n2 < states.length; n2++)
-				if (!mark[n1][n2]) {
+				if (!isMarked(mark, getPair(n1, n2))) {
 					if (statesAgree(transitions, mark, n1, n2))
 						addTriggers(transitions, triggers, n1, n2);
 					else
 						markPair(mark, triggers, n1, n2);
 				}
+		triggers = null;
 		// assign equivalence class numbers to states
 		int numclasses = 0;
 		for (int n = 0; n < states.length; n++)
@@ -180,7 +193,7 @@ final public class MinimizationOperations {
 			if (states[n1].number == -1) {
 				states[n1].number = numclasses;
 				for (int n2 = n1 + 1; n2 < states.length; n2++)
-					if (!mark[n1][n2])
+					if (!isMarked(mark, getPair(n1, n2)))
 						states[n2].number = numclasses;
 				numclasses++;
 			}
@@ -215,6 +228,28 @@ final public class MinimizationOperations {
 		BasicOperations.determinize(a, SpecialOperations.reverse(a));
 	}
 	
+	/** 
+	 * Minimizes the given automaton using Brzozowski's algorithm, within the
+	 * given limits on each of the two determinizations.
+	 * @param limits limits on the intermediate automata and the time, null if none
+	 * @exception AutomatonLimitException if a limit is exceeded, the automaton is then unchanged
+	 */
+	public static void minimizeBrzozowski(Automaton a, AutomatonLimits limits) {
+		if (a.isSingleton())
+			return;
+		if (limits == null) {
+			minimizeBrzozowski(a);
+			return;
+		}
+		// the reversed automaton does not accept the same language, so work on a copy
+		Automaton b = a.clone();
+		BasicOperations.determinize(b, SpecialOperations.reverse(b), limits);
+		BasicOperations.determinize(b, SpecialOperations.reverse(b), limits);
+		a.initial = b.initial;
+		a.deterministic = true;
+		a.clearHashCode();
+	}
+	
 	/** 
 	 * Minimizes the given automaton using Hopcroft's algorithm. 
 	 */
@@ -382,6 +417,97 @@ final public class MinimizationOperations {
 		a.removeDeadTransitions();
 	}
 	
+	/** 
+	 * Minimizes the given automaton using Valmari and Lehtinen's algorithm. 
+	 * The transitions are split at the start points of the automaton, and 
+	 * the blocks of states and the blocks of transitions with the same 
+	 * label are refined as partitions of int arrays. 
+	 * The automaton is not totalized.
+	 */
+	public static void minimizeValmari(Automaton a) {
+		if (a.isSingleton())
+			return;
+		a.determinize();
+		a.removeDeadTransitions(); // dead states are not distinguished from missing transitions
+		Set<State> ss = a.getStates();
+		State[] states = ss.toArray(new State[ss.size()]);
+		int n = states.length;
+		char[] points = Automaton.getStartPoints(ss);
+		// number the states and split the transitions into one per interval
+		int m = 0;
+		for (int q = 0; q < n; q++) {
+			states[q].number = q;
+			for (Transition t : states[q].transitions)
+				m += getInterval(points, t.max) - getInterval(points, t.min) + 1;
+		}
+		int[] tail = new int[m];
+		int[] head = new int[m];
+		int[] label = new int[m];
+		m = 0;
+		for (int q = 0; q < n; q++)
+			for (Transition t : states[q].transitions)
+				for (int x = getInterval(points, t.min), y = getInterval(points, t.max); x <= y; x++) {
+					tail[m] = q;
+					head[m] = t.to.number;
+					label[m++] = x;
+				}
+		// initial partition of the states by acceptance
+		Partition blocks = new Partition(n);
+		for (int q = 0; q < n; q++)
+			if (states[q].accept)
+				blocks.mark(q);
+		blocks.split();
+		// initial partition of the transitions by label
+		Partition cords = new Partition(m, label, points.length);
+		// the incoming transitions of each state
+		int[] infirst = new int[n + 1];
+		int[] in = new int[m];
+		for (int t = 0; t < m; t++)
+			infirst[head[t]]++;
+		for (int q = 0; q < n; q++)
+			infirst[q + 1] += infirst[q];
+		for (int t = m - 1; t >= 0; t--)
+			in[--infirst[head[t]]] = t;
+		// split the blocks by the cords and the cords by the new blocks until fixed point
+		int b = 1, c = 0;
+		while (c < cords.z) {
+			for (int i = cords.first[c]; i < cords.past[c]; i++)
+				blocks.mark(tail[cords.elems[i]]);
+			blocks.split();
+			c++;
+			while (b < blocks.z) {
+				for (int i = blocks.first[b]; i < blocks.past[b]; i++) {
+					int q = blocks.elems[i];
+					for (int j = infirst[q]; j < infirst[q + 1]; j++)
+						cords.mark(in[j]);
+				}
+				cords.split();
+				b++;
+			}
+		}
+		// make a new state for each block with the transitions of a representative
+		State[] newstates = new State[blocks.z];
+		for (int k = 0; k < newstates.length; k++)
+			newstates[k] = new State();
+		for (int k = 0; k < newstates.length; k++) {
+			State r = states[blocks.elems[blocks.first[k]]];
+			State s = newstates[k];
+			s.accept = r.accept;
+			for (Transition t : r.transitions)
+				s.transitions.add(new Transition(t.min, t.max, newstates[blocks.set[t.to.number]]));
+		}
+		a.initial = newstates[blocks.set[a.initial.number]];
+		a.reduce();
+	}
+	
+	/**
+	 * Returns the index of the interval of the given start points that contains the given char.
+	 */
+	private static int getInterval(char[] points, char c) {
+		int i = Arrays.binarySearch(points, c);
+		return i >= 0 ? i : -i - 2;
+	}
+	
 	static class IntPair {
 
 		int n1, n2;
@@ -435,4 +561,204 @@ final public class MinimizationOperations {
 				next.prev = prev;
 		}
 	}
+
+	/**
+	 * Partition of the numbers <code>0..n-1</code> into sets. The elements of 
+	 * each set are consecutive in <code>elems</code>, with the marked elements 
+	 * first.
+	 */
+	static class Partition {
+
+		int z; // number of sets
+		int[] elems; // elements, grouped by set
+		int[] loc; // index of each element in elems
+		int[] set; // set of each element
+		int[] first, past; // range of each set in elems
+		int[] marked; // number of marked elements of each set
+		int[] touched; // sets with marked elements
+		int w; // number of touched sets
+
+		/**
+		 * Constructs a partition with one set, or none if <code>n</code> is 0.
+		 */
+		Partition(int n) {
+			init(n);
+			for (int e = 0; e < n; e++)
+				elems[e] = loc[e] = e;
+			if (n > 0) {
+				z = 1;
+				past[0] = n;
+			}
+		}
+
+		/**
+		 * Constructs a partition with a set for each used key, ordered by key.
+		 */
+		Partition(int n, int[] key, int keys) {
+			init(n);
+			int[] count = new int[keys + 1];
+			for (int e = 0; e < n; e++)
+				count[key[e] + 1]++;
+			for (int k = 0; k < keys; k++)
+				count[k + 1] += count[k];
+			for (int e = 0; e < n; e++) {
+				int i = count[key[e]]++;
+				elems[i] = e;
+				loc[e] = i;
+			}
+			for (int i = 0; i < n; i++) {
+				int e = elems[i];
+				if (i == 0 || key[e] != key[elems[i - 1]]) {
+					if (z > 0)
+						past[z - 1] = i;
+					first[z++] = i;
+				}
+				set[e] = z - 1;
+			}
+			if (z > 0)
+				past[z - 1] = n;
+		}
+
+		private void init(int n) {
+			elems = new int[n];
+			loc = new int[n];
+			set = new int[n];
+			first = new int[n];
+			past = new int[n];
+			marked = new int[n];
+			touched = new int[n];
+		}
+
+		/**
+		 * Marks the given element.
+		 */
+		void mark(int e) {
+			int s = set[e];
+			int i = loc[e];
+			int j = first[s] + marked[s];
+			if (i < j)
+				return; // already marked
+			elems[i] = elems[j];
+			loc[elems[i]] = i;
+			elems[j] = e;
+			loc[e] = j;
+			if (marked[s]++ == 0)
+				touched[w++] = s;
+		}
+
+		/**
+		 * Splits each set with marked elements into its marked and unmarked elements.
+		 * The smaller part gets a new set number.
+		 */
+		void split() {
+			while (w > 0) {
+				int s = touched[--w];
+				int j = first[s] + marked[s];
+				if (j == past[s]) {
+					marked[s] = 0;
+					continue;
+				}
+				if (marked[s] <= past[s] - j) {
+					first[z] = first[s];
+					past[z] = first[s] = j;
+				} else {
+					past[z] = past[s];
+					first[z] = past[s] = j;
+				}
+				for (int i = first[z]; i < past[z]; i++)
+					set[elems[i]] = z;
+				marked[s] = marked[z++] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Lists of pairs of states, indexed by pairs of states. The lists are 
+	 * linked through int arrays, and the first entry of each list is found 
+	 * in an open addressing hash table.
+	 */
+	static class Triggers {
+
+		long[] keys = new long[16]; // pair index + 1, 0 if free
+		int[] first = new int[16]; // first entry for each key
+		int size; // number of keys
+
+		int[] n1 = new int[16], n2 = new int[16]; // pair of each entry
+		int[] next = new int[16]; // next entry with the same key, -1 if none
+		int entries; // number of entries
+
+		/**
+		 * Adds the pair <code>(m1,m2)</code> to the list of the given pair index.
+		 */
+		void add(long pair, int m1, int m2) {
+			if (entries == next.length) {
+				n1 = Arrays.copyOf(n1, 2 * entries);
+				n2 = Arrays.copyOf(n2, 2 * entries);
+				next = Arrays.copyOf(next, 2 * entries);
+			}
+			int h = find(pair);
+			if (keys[h] == 0) {
+				if (2 * (size + 1) > keys.length) {
+					grow();
+					h = find(pair);
+				}
+				keys[h] = pair + 1;
+				first[h] = -1;
+				size++;
+			}
+			n1[entries] = m1;
+			n2[entries] = m2;
+			next[entries] = first[h];
+			first[h] = entries++;
+		}
+
+		/**
+		 * Returns the first entry of the list of the given pair index, -1 if none.
+		 */
+		int getFirst(long pair) {
+			int h = find(pair);
+			return keys[h] == 0 ? -1 : first[h];
+		}
+
+		private int find(long pair) {
+			int mask = keys.length - 1;
+			long k = (pair + 1) * 0x9E3779B97F4A7C15L;
+			int h = (int)(k >>> 32) & mask;
+			while (keys[h] != 0 && keys[h] != pair + 1)
+				h = (h + 1) & mask;
+			return h;
+		}
+
+		private void grow() {
+			long[] oldkeys = keys;
+			int[] oldfirst = first;
+			keys = new long[2 * oldkeys.length];
+			first = new int[keys.length];
+			for (int i = 0; i < oldkeys.length; i++)
+				if (oldkeys[i] != 0) {
+					int h = find(oldkeys[i] - 1);
+					keys[h] = oldkeys[i];
+					first[h] = oldfirst[i];
+				}
+		}
+	}
+
+	/**
+	 * Stack of ints.
+	 */
+	static class IntStack {
+
+		int[] elems = new int[16];
+		int size;
+
+		void push(int e) {
+			if (size == elems.length)
+				elems = Arrays.copyOf(elems, 2 * size);
+			elems[size++] = e;
+		}
+
+		int pop() {
+			return elems[--size];
+		}
+	}
 }
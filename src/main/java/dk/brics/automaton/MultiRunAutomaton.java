@@ -0,0 +1,244 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Finite-state automaton that runs many patterns at once and reports which of
+ * them accept.
+ * <p>
+ * The patterns are compiled into product automata whose states record the
+ * state of every pattern in the product, and whose accept states carry the 
+ * sorted numbers of the accepting patterns. A run reads the input once per 
+ * product automaton. To keep the products from growing too big, the patterns
+ * can be split into groups of a bounded size, with one product per group.
+ */
+public class MultiRunAutomaton implements Serializable {
+
+	static final long serialVersionUID = 20001;
+
+	int patterns; // number of patterns
+	RunAutomaton[] groups; // product automata
+	int[][][] accept; // accept[g][state] = sorted patterns accepted in state of group g, null if none
+
+	/**
+	 * Constructs a new <code>MultiRunAutomaton</code> with all the given 
+	 * automata in one product automaton.
+	 * Same as <code>MultiRunAutomaton(l, Integer.MAX_VALUE)</code>.
+	 * @param l list of automata, numbered from 0 in list order
+	 */
+	public MultiRunAutomaton(List<Automaton> l) {
+		this(l, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Constructs a new <code>MultiRunAutomaton</code>. 
+	 * As a side-effect, the given automata are determinized, if not already 
+	 * deterministic.
+	 * @param l list of automata, numbered from 0 in list order
+	 * @param max_patterns maximal number of automata in each product automaton
+	 */
+	public MultiRunAutomaton(List<Automaton> l, int max_patterns) {
+		if (max_patterns < 1)
+			throw new IllegalArgumentException("max_patterns must be positive");
+		patterns = l.size();
+		int n = (int)((patterns + (long)max_patterns - 1) / max_patterns);
+		groups = new RunAutomaton[n];
+		accept = new int[n][][];
+		for (int g = 0; g < n; g++) {
+			int first = g * max_patterns;
+			int last = Math.min(patterns, first + max_patterns);
+			RunAutomaton[] r = new RunAutomaton[last - first];
+			// the components are only read through delta and getCharClass, so no alphabet tables
+			for (int i = 0; i < r.length; i++)
+				r[i] = new RunAutomaton(l.get(first + i), RunAutomaton.TABLEIZE_NONE);
+			makeProduct(g, r, first);
+		}
+	}
+
+	/**
+	 * Builds product automaton number <code>g</code> of the given automata,
+	 * which are numbered from <code>first</code>.
+	 */
+	private void makeProduct(int g, RunAutomaton[] r, int first) {
+		char[] points = getStartPoints(r);
+		int[][] classes = new int[r.length][points.length];
+		for (int i = 0; i < r.length; i++)
+			for (int c = 0; c < points.length; c++)
+				classes[i][c] = r[i].getCharClass(points[c]);
+		// product construction
+		HashMap<Tuple, State> newstates = new HashMap<Tuple, State>();
+		HashMap<State, int[]> accepting = new HashMap<State, int[]>();
+		LinkedList<Tuple> worklist = new LinkedList<Tuple>();
+		int[] init = new int[r.length];
+		for (int i = 0; i < r.length; i++)
+			init[i] = r[i].initial;
+		Tuple t = new Tuple(init);
+		Automaton a = new Automaton();
+		newstates.put(t, a.initial);
+		worklist.add(t);
+		while (worklist.size() > 0) {
+			t = worklist.removeFirst();
+			State s = newstates.get(t);
+			int k = 0;
+			for (int i = 0; i < r.length; i++)
+				if (t.states[i] != -1 && r[i].accept[t.states[i]])
+					k++;
+			if (k > 0) {
+				int[] ids = new int[k];
+				k = 0;
+				for (int i = 0; i < r.length; i++)
+					if (t.states[i] != -1 && r[i].accept[t.states[i]])
+						ids[k++] = first + i;
+				s.accept = true;
+				accepting.put(s, ids);
+			}
+			for (int c = 0; c < points.length; c++) {
+				int[] next = new int[r.length];
+				boolean dead = true;
+				for (int i = 0; i < r.length; i++) {
+					next[i] = t.states[i] == -1 ? -1 : r[i].delta(t.states[i], classes[i][c]);
+					if (next[i] != -1)
+						dead = false;
+				}
+				if (dead)
+					continue;
+				Tuple u = new Tuple(next);
+				State q = newstates.get(u);
+				if (q == null) {
+					q = new State();
+					newstates.put(u, q);
+					worklist.add(u);
+				}
+				char max;
+				if (c + 1 < points.length)
+					max = (char)(points[c + 1] - 1);
+				else
+					max = Character.MAX_VALUE;
+				s.transitions.add(new Transition(points[c], max, q));
+			}
+		}
+		groups[g] = new RunAutomaton(a);
+		accept[g] = new int[groups[g].size][];
+		for (State s : newstates.values())
+			accept[g][s.number] = accepting.get(s);
+	}
+
+	/**
+	 * Returns the sorted union of the char class start points of the given automata.
+	 */
+	private static char[] getStartPoints(RunAutomaton[] r) {
+		int k = 1;
+		for (RunAutomaton q : r)
+			k += q.points.length;
+		char[] all = new char[k];
+		k = 0;
+		all[k++] = Character.MIN_VALUE;
+		for (RunAutomaton q : r)
+			for (char c : q.points)
+				all[k++] = c;
+		Arrays.sort(all);
+		int m = 0;
+		for (int i = 0; i < all.length; i++)
+			if (i == 0 || all[i] != all[i - 1])
+				all[m++] = all[i];
+		return Arrays.copyOf(all, m);
+	}
+
+	/**
+	 * Returns the number of patterns.
+	 */
+	public int getNumberOfPatterns() {
+		return patterns;
+	}
+
+	/**
+	 * Returns the product automata. The array should not be modified by the caller.
+	 */
+	public RunAutomaton[] getProducts() {
+		return groups.clone();
+	}
+
+	/**
+	 * Returns the sorted numbers of the patterns that accept the given string.
+	 */
+	public int[] run(String s) {
+		int[][] hits = new int[groups.length][];
+		int k = 0;
+		int l = s.length();
+		for (int g = 0; g < groups.length; g++) {
+			RunAutomaton a = groups[g];
+			int p = a.initial;
+			for (int i = 0; i < l && p != -1; i++)
+				p = a.step(p, s.charAt(i));
+			if (p != -1 && accept[g][p] != null) {
+				hits[g] = accept[g][p];
+				k += hits[g].length;
+			}
+		}
+		int[] ids = new int[k];
+		k = 0;
+		for (int[] h : hits)
+			if (h != null) {
+				System.arraycopy(h, 0, ids, k, h.length);
+				k += h.length;
+			}
+		return ids;
+	}
+
+	/**
+	 * Tuple of states of the automata in a product.
+	 */
+	static class Tuple {
+
+		final int[] states;
+		final int hash;
+
+		Tuple(int[] states) {
+			this.states = states;
+			hash = Arrays.hashCode(states);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Tuple && Arrays.equals(states, ((Tuple)obj).states);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
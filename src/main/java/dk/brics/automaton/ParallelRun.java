@@ -0,0 +1,260 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a {@link RunAutomaton} over a long input using several threads.
+ * <p>
+ * The input is split into chunks. The state at the start of a chunk is not 
+ * known until the preceding chunks have been run, so each chunk is run from
+ * all states that can be reached by reading the last <code>LOOKAHEAD</code> 
+ * chars before it, from any state. Runs that reach the same state are merged,
+ * so usually only a few are active after a short while. The chunks are then
+ * combined in order by looking up the end state of each chunk from its 
+ * actual start state. Chunks with too many candidate start states are instead
+ * run from their actual start state while combining. 
+ */
+final class ParallelRun {
+
+	static final int MIN_CHUNK = 1 << 16; // minimal number of chars per chunk
+	static final int LOOKAHEAD = 32; // number of chars used for finding candidate start states
+	static final int MAX_CANDIDATES = 8; // maximal number of candidate start states of a chunk
+
+	private final RunAutomaton automaton;
+	private final CharSequence chars;
+	private final int[] bounds; // chunk j is bounds[j]..bounds[j+1]-1, all but the last bound are multiples of 64
+	private final int[][] candidates; // sorted candidate start states of each chunk
+	private final int[][] ends; // end state of each chunk from each candidate, null if not run
+	private final int[] starts; // actual start state of each chunk
+	private long[] words; // bits of the accept offsets
+
+	private ParallelRun(RunAutomaton automaton, CharSequence chars, int chunks) {
+		this.automaton = automaton;
+		this.chars = chars;
+		int n = chars.length();
+		bounds = new int[chunks + 1];
+		for (int j = 1; j < chunks; j++)
+			bounds[j] = (int)((long)n * j / chunks) & ~63;
+		bounds[chunks] = n;
+		candidates = new int[chunks][];
+		ends = new int[chunks][];
+		starts = new int[chunks];
+	}
+
+	/**
+	 * Returns true if the given input is accepted by the given automaton.
+	 * If <code>offsets</code> is non-null, it is set to the offsets 
+	 * <code>i</code> where the prefix of length <code>i</code> is accepted.
+	 */
+	static boolean run(RunAutomaton a, CharSequence s, BitSet offsets) {
+		int n = s.length();
+		int chunks = Math.min(n / MIN_CHUNK, 4 * ForkJoinPool.getCommonPoolParallelism());
+		if (chunks < 2) {
+			int p = a.getInitialState();
+			if (offsets != null)
+				offsets.clear();
+			for (int i = 0; i < n && p != -1; i++) {
+				if (offsets != null && a.isAccept(p))
+					offsets.set(i);
+				p = a.step(p, s.charAt(i));
+			}
+			boolean accept = p != -1 && a.isAccept(p);
+			if (offsets != null && accept)
+				offsets.set(n);
+			return accept;
+		}
+		ParallelRun r = new ParallelRun(a, s, chunks);
+		ForkJoinPool.commonPool().invoke(r.new Chunks(0, chunks, false));
+		int p = r.combine();
+		boolean accept = p != -1 && a.isAccept(p);
+		if (offsets != null) {
+			r.words = new long[(n >> 6) + 1];
+			ForkJoinPool.commonPool().invoke(r.new Chunks(0, chunks, true));
+			if (accept)
+				r.words[n >> 6] |= 1L << n;
+			offsets.clear();
+			offsets.or(BitSet.valueOf(r.words));
+		}
+		return accept;
+	}
+
+	/**
+	 * Runs the given chunks in parallel, splitting the range in halves.
+	 * If <code>mark</code> is not set, the chunks are run from their candidate 
+	 * start states; otherwise, they are run from their actual start states 
+	 * and the accept offsets are marked.
+	 */
+	private class Chunks extends RecursiveAction {
+
+		static final long serialVersionUID = 10001;
+
+		final int lo, hi;
+		final boolean mark;
+
+		Chunks(int lo, int hi, boolean mark) {
+			this.lo = lo;
+			this.hi = hi;
+			this.mark = mark;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo > 1) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Chunks(lo, mid, mark), new Chunks(mid, hi, mark));
+			} else if (mark)
+				mark(lo);
+			else
+				run(lo);
+		}
+	}
+
+	/**
+	 * Finds the candidate start states of the given chunk and runs the chunk
+	 * from each of them, unless there are too many.
+	 */
+	private void run(int j) {
+		int[] c;
+		if (j == 0)
+			c = new int[] {automaton.getInitialState()};
+		else {
+			int size = automaton.getSize();
+			int[] all = new int[size];
+			for (int q = 0; q < size; q++)
+				all[q] = q;
+			int[] lane = all.clone();
+			int k = run(Math.max(bounds[j] - LOOKAHEAD, bounds[j - 1]), bounds[j], all, lane);
+			c = Arrays.copyOf(all, k);
+			Arrays.sort(c);
+		}
+		candidates[j] = c;
+		if (c.length <= MAX_CANDIDATES) {
+			int[] cur = c.clone();
+			int[] lane = new int[c.length];
+			for (int i = 0; i < lane.length; i++)
+				lane[i] = i;
+			run(bounds[j], bounds[j + 1], cur, lane);
+			int[] e = new int[c.length];
+			for (int i = 0; i < e.length; i++)
+				e[i] = lane[i] == -1 ? -1 : cur[lane[i]];
+			ends[j] = e;
+		}
+	}
+
+	/**
+	 * Runs from the distinct states <code>cur</code> over the chars 
+	 * <code>from</code>..<code>to</code>-1, merging runs that reach the same
+	 * state. Afterwards, the first entries of <code>cur</code> are the distinct
+	 * states reached, and <code>lane[i]</code> is the index in <code>cur</code> 
+	 * of the run that was initially at index <code>lane[i]</code>, -1 if that 
+	 * run died. Returns the number of distinct states reached.
+	 */
+	private int run(int from, int to, int[] cur, int[] lane) {
+		int lanes = cur.length;
+		int[] owner = new int[automaton.getSize()];
+		Arrays.fill(owner, -1);
+		int[] remap = new int[lanes];
+		for (int i = from; i < to && lanes > 0; i++) {
+			if (lanes == 1) {
+				int p = cur[0];
+				for (; i < to; i++) {
+					p = automaton.step(p, chars.charAt(i));
+					if (p == -1) {
+						for (int l = 0; l < lane.length; l++)
+							lane[l] = -1;
+						return 0;
+					}
+				}
+				cur[0] = p;
+				return 1;
+			}
+			char c = chars.charAt(i);
+			int k = 0;
+			for (int l = 0; l < lanes; l++) {
+				int q = automaton.step(cur[l], c);
+				if (q == -1)
+					remap[l] = -1;
+				else if (owner[q] != -1)
+					remap[l] = owner[q];
+				else {
+					owner[q] = k;
+					cur[k] = q;
+					remap[l] = k++;
+				}
+			}
+			for (int l = 0; l < k; l++)
+				owner[cur[l]] = -1;
+			if (k < lanes)
+				for (int l = 0; l < lane.length; l++)
+					if (lane[l] != -1)
+						lane[l] = remap[lane[l]];
+			lanes = k;
+		}
+		return lanes;
+	}
+
+	/**
+	 * Combines the chunks in order, running those that were not run from
+	 * candidate states. Returns the state at the end of the input, -1 if dead.
+	 */
+	private int combine() {
+		int p = automaton.getInitialState();
+		for (int j = 0; j < starts.length; j++) {
+			starts[j] = p;
+			if (p == -1)
+				continue;
+			int i = ends[j] == null ? -1 : Arrays.binarySearch(candidates[j], p);
+			if (i >= 0)
+				p = ends[j][i];
+			else
+				for (int k = bounds[j]; k < bounds[j + 1] && p != -1; k++)
+					p = automaton.step(p, chars.charAt(k));
+		}
+		return p;
+	}
+
+	/**
+	 * Runs the given chunk from its actual start state and marks the accept
+	 * offsets.
+	 */
+	private void mark(int j) {
+		int p = starts[j];
+		for (int i = bounds[j]; i < bounds[j + 1] && p != -1; i++) {
+			if (automaton.isAccept(p))
+				words[i >> 6] |= 1L << i;
+			p = automaton.step(p, chars.charAt(i));
+		}
+	}
+}
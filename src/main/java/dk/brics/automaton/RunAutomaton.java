@@ -38,7 +38,13 @@ import java.io.OptionalDataException;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Finite-state automaton with fast run operation.
@@ -48,12 +54,57 @@ public class RunAutomaton implements Serializable {
 
 	static final long serialVersionUID = 20001;
 
+	/**
+	 * No alphabet table; char classes are found by binary search.
+	 * @see #RunAutomaton(Automaton, int)
+	 */
+	public static final int TABLEIZE_NONE = 0;
+
+	/**
+	 * Alphabet table with an entry for every char, which gives the fastest 
+	 * lookup of char classes but takes 256 KB per automaton.
+	 * @see #RunAutomaton(Automaton, int)
+	 */
+	public static final int TABLEIZE_FULL = 1;
+
+	/**
+	 * Two-level alphabet table where each page maps the chars with the same
+	 * high byte. Identical pages are shared between all automata, and the 
+	 * entries are bytes when there are at most 256 char classes.
+	 * @see #RunAutomaton(Automaton, int)
+	 */
+	public static final int TABLEIZE_COMPACT = 2;
+
+	static final int PARALLEL_TABLE = 1 << 18; // minimal table size for filling it in parallel
+	static final int SPARSE_TABLE = 1 << 10; // minimal table size for trying a row-displacement table
+	static final int SPARSE_DENSITY = 25; // maximal percentage of transitions for trying a row-displacement table
+
 	int size;
 	boolean[] accept;
 	int initial;
-	int[] transitions; // delta(state,c) = transitions[state*points.length + getCharClass(c)]
+	int absorbing; // number of states that accept all continuations, these are numbered last
+	int[] transitions; // delta(state,c) = transitions[state*stride + getCharClass(c)], null if narrow
+	int[] base; // row offsets of the row-displacement table, null if the table is dense
+	char[] check; // delta(state,c) = transitions[base[state] + c] if check[base[state] + c] == c, -1 otherwise
+	byte[] bytetransitions; // transitions if there are at most 128 states
+	short[] shorttransitions; // transitions if there are at most 32768 states
 	char[] points; // char interval start points
-	int[] classmap; // map from char number to class class
+	int stride; // number of char classes, 0 if serialized before intervals were merged into classes
+	int[] intervalclass; // map from interval number to char class, null if each interval is a class
+	int[] classmap; // map from char number to char class
+	boolean compact; // if true, the two-level map from char number to class is used
+	transient byte[][] bytepages; // two-level map from char number to class, for at most 256 classes
+	transient char[][] charpages; // two-level map from char number to class, for more than 256 classes
+	transient CharClassPages[] pages; // keeps the shared pages alive
+	transient volatile RunAutomaton reverse; // reversed automaton for linear-time search, built on demand
+	transient volatile RunAutomaton search; // automaton for Sigma* L, built on demand
+	String prefix; // prefix of all accepted strings, null if empty
+	String factor; // substring of all accepted strings, null if empty
+	transient StringSearch prefix_search; // search for prefix, null if none
+	transient StringSearch factor_search; // search for factor, null if none
+	transient FirstCharFilter first_filter; // filter for match start positions, null if none
+	transient volatile boolean has_first_filter; // if true, first_filter has been computed
+	transient CompiledRun compiled; // run methods compiled to bytecode, null if not compiled
 
 	/** 
 	 * Sets alphabet table for optimal run performance. 
@@ -64,10 +115,53 @@ public class RunAutomaton implements Serializable {
 		for (int j = 0; j <= Character.MAX_VALUE - Character.MIN_VALUE; j++) {
 			if (i + 1 < points.length && j == points[i + 1])
 				i++;
-			classmap[j] = i;
+			classmap[j] = getIntervalClass(i);
+		}
+	}
+
+	/** 
+	 * Sets two-level alphabet table with shared pages. 
+	 */
+	final void setCompactAlphabet() {
+		compact = true;
+		pages = new CharClassPages[256];
+		if (stride <= 256)
+			bytepages = new byte[256][];
+		else
+			charpages = new char[256][];
+		int i = 0;
+		for (int h = 0; h < 256; h++) {
+			char[] page = new char[256];
+			for (int j = 0; j < 256; j++) {
+				if (i + 1 < points.length && (h << 8 | j) == points[i + 1])
+					i++;
+				page[j] = (char)getIntervalClass(i);
+			}
+			if (bytepages != null) {
+				byte[] b = new byte[256];
+				for (int j = 0; j < 256; j++)
+					b[j] = (byte)page[j];
+				pages[h] = CharClassPages.intern(b);
+				bytepages[h] = pages[h].bytes;
+			} else {
+				pages[h] = CharClassPages.intern(page);
+				charpages[h] = pages[h].chars;
+			}
 		}
 	}
 
+	/**
+	 * Returns the kind of alphabet table used by this automaton.
+	 */
+	int getTableize() {
+		if (classmap != null)
+			return TABLEIZE_FULL;
+		else if (compact)
+			return TABLEIZE_COMPACT;
+		else
+			return TABLEIZE_NONE;
+	}
+
 	/** 
 	 * Returns a string representation of this automaton. 
 	 */
@@ -82,7 +176,7 @@ public class RunAutomaton implements Serializable {
 			else
 				b.append(" [reject]:\n");
 			for (int j = 0; j < points.length; j++) {
-				int k = transitions[i * points.length + j];
+				int k = delta(i, getIntervalClass(j));
 				if (k != -1) {
 					char min = points[j];
 					char max;
@@ -132,11 +226,94 @@ public class RunAutomaton implements Serializable {
 		return points.clone();
 	}
 
+	/**
+	 * Returns an automaton that accepts the same language as this automaton.
+	 */
+	Automaton toAutomaton() {
+		State[] states = new State[size];
+		for (int n = 0; n < size; n++) {
+			states[n] = new State();
+			states[n].accept = accept[n];
+		}
+		for (int n = 0; n < size; n++)
+			for (int c = 0; c < points.length; c++) {
+				int k = delta(n, getIntervalClass(c));
+				if (k != -1) {
+					char max;
+					if (c + 1 < points.length)
+						max = (char)(points[c + 1] - 1);
+					else
+						max = Character.MAX_VALUE;
+					states[n].transitions.add(new Transition(points[c], max, states[k]));
+				}
+			}
+		Automaton a = new Automaton();
+		a.initial = states[initial];
+		a.deterministic = true;
+		a.reduce();
+		return a;
+	}
+
+	/**
+	 * Returns an automaton that accepts the reversed strings of the language
+	 * <code>L Sigma*</code>, that is, <code>Sigma* reverse(L)</code>, where 
+	 * <code>L</code> is the language of this automaton. Running it backwards 
+	 * from the end of an input accepts at every offset where a match of this
+	 * automaton starts. The automaton is built on the first invocation.
+	 */
+	RunAutomaton getReverse() {
+		RunAutomaton r = reverse;
+		if (r == null) {
+			Automaton a = toAutomaton();
+			SpecialOperations.reverse(a);
+			a.initial.addTransition(new Transition(Character.MIN_VALUE, Character.MAX_VALUE, a.initial));
+			a.minimize();
+			r = new RunAutomaton(a, getTableize());
+			reverse = r;
+		}
+		return r;
+	}
+
+	/**
+	 * Returns the filter that skips input positions where no match starts,
+	 * or null if filtering does not pay off. The filter is built on the first
+	 * invocation.
+	 */
+	FirstCharFilter getFirstCharFilter() {
+		if (!has_first_filter) {
+			first_filter = FirstCharFilter.create(this);
+			has_first_filter = true;
+		}
+		return first_filter;
+	}
+
+	/**
+	 * Returns the automaton that accepts the strings that end with a match
+	 * of this automaton. The automaton is built on the first invocation.
+	 */
+	RunAutomaton getSearch() {
+		RunAutomaton r = search;
+		if (r == null) {
+			Automaton a = Automaton.makeAnyString().concatenate(toAutomaton());
+			a.minimize();
+			r = new RunAutomaton(a, getTableize());
+			search = r;
+		}
+		return r;
+	}
+
 	/** 
 	 * Gets character class of given char. 
 	 */
 	int getCharClass(char c) {
-		return SpecialOperations.findIndex(c, points);
+		return getIntervalClass(SpecialOperations.findIndex(c, points));
+	}
+
+	/**
+	 * Gets character class of the chars in the interval with the given number. 
+	 */
+	final int getIntervalClass(int i) {
+		return intervalclass != null ? intervalclass[i] : i;
 	}
 
 	@SuppressWarnings("unused")
@@ -200,27 +377,457 @@ public class RunAutomaton implements Serializable {
 	 *                 method faster in return of a higher memory usage
 	 */
 	public RunAutomaton(Automaton a, boolean tableize) {
+		this(a, tableize ? TABLEIZE_FULL : TABLEIZE_NONE);
+	}
+
+	/**
+	 * Constructs a new <code>RunAutomaton</code> from a deterministic
+	 * <code>Automaton</code>. If the given automaton is not deterministic,
+	 * it is determinized first.
+	 * @param a an automaton
+	 * @param tableize kind of alphabet table: <code>TABLEIZE_NONE</code>, 
+	 *                 <code>TABLEIZE_FULL</code>, or <code>TABLEIZE_COMPACT</code>
+	 */
+	public RunAutomaton(Automaton a, int tableize) {
 		a.determinize();
-		points = a.getStartPoints();
 		Set<State> states = a.getStates();
+		points = Automaton.getStartPoints(states);
 		Automaton.setStateNumbers(states);
 		initial = a.initial.number;
 		size = states.size();
 		accept = new boolean[size];
-		transitions = new int[size * points.length];
-		for (int n = 0; n < size * points.length; n++)
-			transitions[n] = -1;
+		State[] array = new State[size];
 		for (State s : states) {
-			int n = s.number;
-			accept[n] = s.accept;
-			for (int c = 0; c < points.length; c++) {
-				State q = s.step(points[c]);
-				if (q != null)
-					transitions[n * points.length + c] = q.number;
-			}
+			array[s.number] = s;
+			accept[s.number] = s.accept;
 		}
-		if (tableize)
+		int[] table = new int[size * points.length];
+		if (table.length >= PARALLEL_TABLE)
+			ForkJoinPool.commonPool().invoke(new TableFill(array, points, table, 0, size));
+		else
+			fillTable(array, points, table, 0, size);
+		table = setAbsorbing(table, states);
+		String factor = getCommonFactor(table);
+		table = mergeClasses(table);
+		if (!setSparseTransitions(table))
+			setTransitions(table);
+		if (tableize == TABLEIZE_FULL)
 			setAlphabet();
+		else if (tableize == TABLEIZE_COMPACT)
+			setCompactAlphabet();
+		setLiterals(SpecialOperations.getCommonPrefix(a), factor);
+	}
+
+	private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+		s.defaultReadObject();
+		if (stride == 0)
+			stride = points.length;
+		if (compact)
+			setCompactAlphabet();
+		setLiterals(prefix, factor);
+	}
+
+	/**
+	 * Sets the literals that the matchers search for before running the automaton.
+	 */
+	final void setLiterals(String prefix, String factor) {
+		if (prefix != null && prefix.length() > 0) {
+			this.prefix = prefix;
+			prefix_search = new StringSearch(prefix);
+		}
+		if (factor != null && factor.length() > 0) {
+			this.factor = factor;
+			factor_search = new StringSearch(factor);
+		}
+	}
+
+	/**
+	 * Returns the common factor (see {@link SpecialOperations#getCommonFactor(Automaton)}) 
+	 * of the given transition table, where runs of classes with the same target are 
+	 * merged into one transition.
+	 */
+	private String getCommonFactor(int[] table) {
+		int k = points.length;
+		int[] first = new int[size + 1];
+		int m = 0;
+		for (int q = 0; q < size; q++) {
+			first[q] = m;
+			for (int c = 0; c < k; c++)
+				if (table[q * k + c] != -1 && (c == 0 || table[q * k + c - 1] != table[q * k + c]))
+					m++;
+		}
+		first[size] = m;
+		int[] to = new int[m];
+		char[] min = new char[m];
+		char[] max = new char[m];
+		m = 0;
+		for (int q = 0; q < size; q++)
+			for (int c = 0; c < k; c++) {
+				int r = table[q * k + c];
+				if (r == -1)
+					continue;
+				char hi = c + 1 < k ? (char)(points[c + 1] - 1) : Character.MAX_VALUE;
+				if (c > 0 && table[q * k + c - 1] == r)
+					max[m - 1] = hi;
+				else {
+					to[m] = r;
+					min[m] = points[c];
+					max[m] = hi;
+					m++;
+				}
+			}
+		return SpecialOperations.getCommonFactor(initial, accept, first, to, min, max);
+	}
+
+	/**
+	 * Fills the rows of the transition table for the states <code>from</code>..<code>to</code>-1
+	 * by merging the sorted transitions of each state with the interval start points.
+	 */
+	static void fillTable(State[] states, char[] points, int[] table, int from, int to) {
+		int k = points.length;
+		for (int n = from; n < to; n++) {
+			int c = 0;
+			for (Transition t : states[n].getSortedTransitionArray(false)) {
+				for (; points[c] < t.min; c++)
+					table[n * k + c] = -1;
+				for (; c < k && points[c] <= t.max; c++)
+					table[n * k + c] = t.to.number;
+			}
+			for (; c < k; c++)
+				table[n * k + c] = -1;
+		}
+	}
+
+	/**
+	 * Fills the transition table in parallel, splitting the states in halves.
+	 */
+	static class TableFill extends RecursiveAction {
+
+		static final long serialVersionUID = 10001;
+
+		final State[] states;
+		final char[] points;
+		final int[] table;
+		final int from, to;
+
+		TableFill(State[] states, char[] points, int[] table, int from, int to) {
+			this.states = states;
+			this.points = points;
+			this.table = table;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if ((to - from) * points.length < PARALLEL_TABLE / 4 || to - from < 2)
+				fillTable(states, points, table, from, to);
+			else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new TableFill(states, points, table, from, mid), new TableFill(states, points, table, mid, to));
+			}
+		}
+	}
+
+	/**
+	 * Finds the states that accept all continuations and the states that accept
+	 * none. Transitions to the latter are removed, and the former are numbered 
+	 * last so that runs can stop as soon as they reach one of them. 
+	 * The numbers of the given states are updated.
+	 * Returns the renumbered transition table.
+	 */
+	private int[] setAbsorbing(int[] table, Set<State> states) {
+		int k = points.length;
+		// predecessors of each state
+		int[] first = new int[size + 1];
+		for (int t : table)
+			if (t != -1)
+				first[t + 1]++;
+		for (int q = 0; q < size; q++)
+			first[q + 1] += first[q];
+		int[] pred = new int[first[size]];
+		int[] next = first.clone();
+		for (int n = 0; n < table.length; n++)
+			if (table[n] != -1)
+				pred[next[table[n]]++] = n / k;
+		// live states reach an accept state
+		boolean[] live = new boolean[size];
+		int[] worklist = new int[size];
+		int w = 0;
+		for (int q = 0; q < size; q++)
+			if (accept[q]) {
+				live[q] = true;
+				worklist[w++] = q;
+			}
+		while (w > 0) {
+			int q = worklist[--w];
+			for (int i = first[q]; i < first[q + 1]; i++)
+				if (!live[pred[i]]) {
+					live[pred[i]] = true;
+					worklist[w++] = pred[i];
+				}
+		}
+		for (int n = 0; n < table.length; n++)
+			if (table[n] != -1 && !live[table[n]])
+				table[n] = -1;
+		// universal states are accept states with all transitions to universal states
+		boolean[] universal = new boolean[size];
+		for (int q = 0; q < size; q++) {
+			universal[q] = accept[q];
+			for (int c = 0; c < k && universal[q]; c++)
+				universal[q] = table[q * k + c] != -1;
+			if (!universal[q])
+				worklist[w++] = q;
+		}
+		while (w > 0) {
+			int q = worklist[--w];
+			for (int i = first[q]; i < first[q + 1]; i++)
+				if (universal[pred[i]]) {
+					universal[pred[i]] = false;
+					worklist[w++] = pred[i];
+				}
+		}
+		int[] number = new int[size];
+		int n = 0;
+		for (int q = 0; q < size; q++)
+			if (!universal[q])
+				number[q] = n++;
+		absorbing = size - n;
+		for (int q = 0; q < size; q++)
+			if (universal[q])
+				number[q] = n++;
+		if (absorbing == 0)
+			return table;
+		int[] t = new int[table.length];
+		boolean[] a = new boolean[size];
+		for (int q = 0; q < size; q++) {
+			a[number[q]] = accept[q];
+			for (int c = 0; c < k; c++) {
+				int r = table[q * k + c];
+				t[number[q] * k + c] = r == -1 ? -1 : number[r];
+			}
+		}
+		accept = a;
+		initial = number[initial];
+		for (State s : states)
+			s.number = number[s.number];
+		return t;
+	}
+
+	/**
+	 * Merges the intervals whose columns in the given transition table are 
+	 * identical into one char class, and sets <code>stride</code> and 
+	 * <code>intervalclass</code> accordingly. 
+	 * Returns the transition table with a column for each class.
+	 */
+	private int[] mergeClasses(int[] table) {
+		int k = points.length;
+		int[] hash = new int[k];
+		for (int q = 0; q < size; q++)
+			for (int c = 0; c < k; c++)
+				hash[c] = 31 * hash[c] + table[q * k + c];
+		// classes with the same column hash are chained, starting from the last one
+		Map<Integer, Integer> last = new HashMap<Integer, Integer>();
+		int[] chain = new int[k];
+		int[] column = new int[k];
+		int[] cls = new int[k];
+		int n = 0;
+		for (int c = 0; c < k; c++) {
+			Integer l = last.get(hash[c]);
+			int d = l != null ? l : -1;
+			while (d != -1 && !sameColumn(table, k, column[d], c))
+				d = chain[d];
+			if (d == -1) {
+				d = n++;
+				column[d] = c;
+				chain[d] = l != null ? l : -1;
+				last.put(hash[c], d);
+			}
+			cls[c] = d;
+		}
+		stride = n;
+		if (n == k)
+			return table;
+		intervalclass = cls;
+		int[] t = new int[size * n];
+		for (int q = 0; q < size; q++)
+			for (int d = 0; d < n; d++)
+				t[q * n + d] = table[q * k + column[d]];
+		return t;
+	}
+
+	/**
+	 * Returns true if the columns <code>c1</code> and <code>c2</code> of the 
+	 * given transition table with <code>k</code> columns are identical.
+	 */
+	private boolean sameColumn(int[] table, int k, int c1, int c2) {
+		for (int q = 0; q < size; q++)
+			if (table[q * k + c1] != table[q * k + c2])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns true if the given state accepts all continuations.
+	 */
+	final boolean isAbsorbing(int state) {
+		return state >= size - absorbing;
+	}
+
+	/**
+	 * Stores the given transition table using the narrowest array type that
+	 * can hold all state numbers.
+	 */
+	final void setTransitions(int[] t) {
+		if (size <= Byte.MAX_VALUE + 1) {
+			bytetransitions = new byte[t.length];
+			for (int n = 0; n < t.length; n++)
+				bytetransitions[n] = (byte)t[n];
+		} else if (size <= Short.MAX_VALUE + 1) {
+			shorttransitions = new short[t.length];
+			for (int n = 0; n < t.length; n++)
+				shorttransitions[n] = (short)t[n];
+		} else
+			transitions = t;
+	}
+
+	/**
+	 * Stores the given transition table as a row-displacement table if it is 
+	 * sparse and that takes less memory. The rows are placed at distinct offsets,
+	 * most filled rows first, such that their transitions occupy different 
+	 * slots; each slot is tagged with the class of its transition.
+	 * Returns true if the row-displacement table is used.
+	 */
+	final boolean setSparseTransitions(int[] t) {
+		if (t.length < SPARSE_TABLE || stride > Character.MAX_VALUE)
+			return false;
+		int[] count = new int[size];
+		int m = 0;
+		for (int q = 0; q < size; q++) {
+			for (int c = 0; c < stride; c++)
+				if (t[q * stride + c] != -1)
+					count[q]++;
+			m += count[q];
+		}
+		if ((long)m * 100 > (long)t.length * SPARSE_DENSITY)
+			return false;
+		// order the states by decreasing number of transitions
+		int[] first = new int[stride + 2];
+		for (int q = 0; q < size; q++)
+			first[stride - count[q] + 1]++;
+		for (int i = 0; i <= stride; i++)
+			first[i + 1] += first[i];
+		int[] order = new int[size];
+		for (int q = 0; q < size; q++)
+			order[first[stride - count[q]]++] = q;
+		int[] b = new int[size];
+		int[] free = new int[m + size + stride + 1]; // free[i] == i if slot i is not in use, grown on demand
+		for (int i = 0; i < free.length; i++)
+			free[i] = i;
+		boolean[] taken = new boolean[free.length]; // offsets in use
+		int[] row = new int[stride];
+		int untaken = 0; // lowest offset not in use
+		int length = 0;
+		for (int q : order) {
+			int k = 0;
+			for (int c = 0; c < stride; c++)
+				if (t[q * stride + c] != -1)
+					row[k++] = c;
+			int o = untaken;
+			if (k > 0) {
+				// try the offsets that put the first transition in a free slot
+				int i = nextFree(free, untaken + row[0]);
+				while (true) {
+					o = i - row[0];
+					if (o + stride + 1 > free.length) {
+						int n = free.length;
+						free = Arrays.copyOf(free, 2 * (o + stride + 1));
+						for (int j = n; j < free.length; j++)
+							free[j] = j;
+						taken = Arrays.copyOf(taken, free.length);
+					}
+					boolean fits = !taken[o];
+					for (int j = 1; fits && j < k; j++)
+						fits = free[o + row[j]] == o + row[j];
+					if (fits)
+						break;
+					i = nextFree(free, i + 1);
+				}
+			}
+			b[q] = o;
+			taken[o] = true;
+			for (int i = 0; i < k; i++)
+				free[o + row[i]] = o + row[i] + 1;
+			while (taken[untaken])
+				untaken++;
+			length = Math.max(length, o + stride);
+		}
+		int width = size <= Byte.MAX_VALUE + 1 ? 1 : size <= Short.MAX_VALUE + 1 ? 2 : 4;
+		if (4L * size + (2L + width) * length >= (long)width * t.length)
+			return false;
+		int[] next = new int[length];
+		char[] chk = new char[length];
+		Arrays.fill(next, -1);
+		for (int q = 0; q < size; q++)
+			for (int c = 0; c < stride; c++)
+				if (t[q * stride + c] != -1) {
+					next[b[q] + c] = t[q * stride + c];
+					chk[b[q] + c] = (char)c;
+				}
+		base = b;
+		check = chk;
+		setTransitions(next);
+		return true;
+	}
+
+	/**
+	 * Returns the first slot from <code>i</code> with <code>free[i] == i</code>,
+	 * where the slots in use point further on.
+	 */
+	private static int nextFree(int[] free, int i) {
+		while (free[i] != i) {
+			free[i] = free[free[i]];
+			i = free[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the number of bytes used by the arrays that hold the transition 
+	 * table of this automaton. The table is a row-displacement table if that 
+	 * takes less memory than a full table.
+	 */
+	public long getTransitionTableSize() {
+		long n = 0;
+		if (bytetransitions != null)
+			n += bytetransitions.length;
+		else if (shorttransitions != null)
+			n += 2L * shorttransitions.length;
+		else
+			n += 4L * transitions.length;
+		if (base != null)
+			n += 4L * base.length + 2L * check.length;
+		return n;
+	}
+
+	/**
+	 * Returns the state obtained by reading a char of the given class from the 
+	 * given state, -1 if not obtaining any such state.
+	 */
+	final int delta(int state, int c) {
+		int n;
+		if (base != null) {
+			n = base[state] + c;
+			if (check[n] != c)
+				return -1;
+		} else
+			n = state * stride + c;
+		if (bytetransitions != null)
+			return bytetransitions[n];
+		else if (shorttransitions != null)
+			return shorttransitions[n];
+		else
+			return transitions[n];
 	}
 
 	/**
@@ -231,19 +838,68 @@ public class RunAutomaton implements Serializable {
 	 * transition function.)
 	 */
 	public int step(int state, char c) {
-		if (classmap == null)
-			return transitions[state * points.length + getCharClass(c)];
+		if (classmap != null)
+			return delta(state, classmap[c - Character.MIN_VALUE]);
+		else if (bytepages != null)
+			return delta(state, bytepages[c >>> 8][c & 0xff] & 0xff);
+		else if (charpages != null)
+			return delta(state, charpages[c >>> 8][c & 0xff]);
 		else
-			return transitions[state * points.length + classmap[c - Character.MIN_VALUE]];
+			return delta(state, getCharClass(c));
+	}
+
+	/**
+	 * Compiles the <code>run</code> methods of this automaton to JVM bytecode, 
+	 * where each state is a block of code that branches on the next char. 
+	 * This requires Java 17 or later and is only done for automata with at 
+	 * most 1000 states whose code fits in 8000 bytes per method, so that it 
+	 * can be JIT-compiled. Otherwise, the tables are used as before.
+	 * @return true if the methods were compiled
+	 */
+	public boolean compile() {
+		if (compiled == null)
+			compiled = RunCompiler.compile(this);
+		return compiled != null;
+	}
+
+	/**
+	 * Returns true if the given input is accepted by this automaton.
+	 * Long inputs are split into chunks that are run in parallel in the
+	 * common fork-join pool. Each chunk is run from the states that can be 
+	 * reached by reading a few chars before it, which usually costs little 
+	 * more than a single run.
+	 * @param s the input
+	 * @return true if <code>s</code> is accepted
+	 */
+	public boolean runParallel(CharSequence s) {
+		return ParallelRun.run(this, s, null);
+	}
+
+	/**
+	 * Same as {@link #runParallel(CharSequence)}, but also finds the offsets
+	 * where the prefix of the input is accepted. For an automaton that 
+	 * accepts <code>Sigma* L</code>, these are the offsets where matches of 
+	 * <code>L</code> end.
+	 * @param s the input
+	 * @param offsets set to the offsets <code>i</code> where the first <code>i</code> 
+	 *                chars of <code>s</code> are accepted
+	 * @return true if <code>s</code> is accepted
+	 */
+	public boolean runParallel(CharSequence s, BitSet offsets) {
+		return ParallelRun.run(this, s, offsets);
 	}
 
 	/** 
 	 * Returns true if the given string is accepted by this automaton. 
 	 */
 	public boolean run(String s) {
+		CompiledRun c = compiled;
+		if (c != null)
+			return c.run(s);
 		int p = initial;
 		int l = s.length();
-		for (int i = 0; i < l; i++) {
+		int u = size - absorbing;
+		for (int i = 0; i < l && p < u; i++) {
 			p = step(p, s.charAt(i));
 			if (p == -1)
 				return false;
@@ -259,10 +915,16 @@ public class RunAutomaton implements Serializable {
 	 * @return length of the longest accepted run, -1 if no run is accepted
 	 */
 	public int run(String s, int offset) {
+		CompiledRun c = compiled;
+		if (c != null)
+			return c.run(s, offset);
 		int p = initial;
 		int l = s.length();
 		int max = -1;
+		int u = size - absorbing;
 		for (int r = 0; offset <= l; offset++, r++) {
+			if (p >= u)
+				return r + l - offset;
 			if (accept[p])
 				max = r;
 			if (offset == l)
@@ -274,23 +936,93 @@ public class RunAutomaton implements Serializable {
 		return max;
 	}
 
+	/**
+	 * Returns true if some substring of the given input is accepted by this
+	 * automaton. The input is scanned once with an automaton for 
+	 * <code>Sigma* L</code> (built on the first invocation), stopping at the 
+	 * end of the first match.
+	 * @param s the input
+	 * @return true if <code>s</code> contains a match
+	 */
+	public boolean containsMatch(CharSequence s) {
+		int l = s.length();
+		if (factor_search != null && factor_search.indexOf(s, 0, l) == -1)
+			return false;
+		RunAutomaton r = getSearch();
+		int p = r.initial;
+		if (r.accept[p])
+			return true;
+		for (int i = 0; i < l; i++) {
+			p = r.step(p, s.charAt(i));
+			if (p == -1)
+				return false;
+			if (r.accept[p])
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of matches in the given input, with the same 
+	 * non-overlapping leftmost-longest matches as {@link AutomatonMatcher#find()}.
+	 * The matches are found with the linear-time search of 
+	 * {@link #newMatcher(CharSequence, boolean)}, so the automaton is not 
+	 * restarted at offsets where no match starts.
+	 * @param s the input
+	 * @return number of matches
+	 */
+	public int countMatches(CharSequence s) {
+		AutomatonMatcher m = new AutomatonMatcher(s, this, true);
+		int n = 0;
+		while (m.find())
+			n++;
+		return n;
+	}
+
 	/**
 	 * Creates a new automaton matcher for the given input.
 	 * @param s the CharSequence to search
 	 * @return A new automaton matcher for the given input
 	 */
 	public AutomatonMatcher newMatcher(CharSequence s)  {
-		return new AutomatonMatcher(s, this);
+		return new AutomatonMatcher(s, this, false);
 	}
 
 	/**
 	 * Creates a new automaton matcher for the given input.
+	 * If <code>linear</code> is set, the matcher finds all matches in a single
+	 * backward scan of the input (using a reversed automaton that is built once
+	 * per <code>RunAutomaton</code>) followed by a forward scan of each match, 
+	 * instead of restarting the automaton at every offset. The matches 
+	 * are the same in both modes.
+	 * @param s the CharSequence to search
+	 * @param linear if true, use the linear-time search
+	 * @return A new automaton matcher for the given input
+	 */
+	public AutomatonMatcher newMatcher(CharSequence s, boolean linear)  {
+		return new AutomatonMatcher(s, this, linear);
+	}
+
+	/**
+	 * Creates a new automaton matcher for the given part of the input.
+	 * The input is not copied, and the matcher reports offsets relative to
+	 * <code>startOffset</code>.
 	 * @param s the CharSequence to search
 	 * @param startOffset the starting offset of the given character sequence
 	 * @param endOffset the ending offset of the given character sequence
 	 * @return A new automaton matcher for the given input
 	 */
 	public AutomatonMatcher newMatcher(CharSequence s, int startOffset, int endOffset)  {
-		return new AutomatonMatcher(s.subSequence(startOffset, endOffset), this);
+		return new AutomatonMatcher(s, startOffset, endOffset, this, false);
+	}
+
+	/**
+	 * Creates a new streaming matcher that reports the matches in input
+	 * given in chunks.
+	 * @param listener receiver of the matches
+	 * @return A new streaming matcher
+	 */
+	public StreamingMatcher newStreamingMatcher(MatchListener listener) {
+		return new StreamingMatcher(this, listener);
 	}
 }
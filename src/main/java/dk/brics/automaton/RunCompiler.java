@@ -0,0 +1,418 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the run methods of a {@link RunAutomaton} to JVM bytecode.
+ * <p>
+ * Each state becomes a block of code that reads the next char and branches
+ * on it with a binary search over the char intervals of the transitions of
+ * the state, so the state is kept in the program counter and no tables are
+ * read. The class is written in the class file format of Java 5, which 
+ * needs no stack map frames, and defined as a hidden class in this package 
+ * using <code>MethodHandles.Lookup.defineHiddenClass</code> on Java 17 and
+ * later (in <code>META-INF/versions/17</code> of the jar).
+ * <p>
+ * Automata with too many states or transitions are not compiled: the code of
+ * each method must stay below 8000 bytes, since HotSpot by default does not 
+ * JIT-compile larger methods.
+ */
+final class RunCompiler {
+
+	static final int MAX_STATES = 1000;
+	static final int MAX_CODE = 8000;
+
+	private static final Method DEFINE = getDefineMethod();
+
+	// bytecode instructions
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int ILOAD = 0x15;
+	private static final int ALOAD = 0x19;
+	private static final int ISTORE = 0x36;
+	private static final int ISUB = 0x64;
+	private static final int IINC = 0x84;
+	private static final int IF_ICMPLT = 0xa1;
+	private static final int IF_ICMPGT = 0xa3;
+	private static final int GOTO = 0xa7;
+	private static final int IRETURN = 0xac;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+
+	// local variables
+	private static final int S = 1, I = 2, LENGTH = 3, C = 4, MAX = 5, OFFSET = 6;
+
+	private final RunAutomaton automaton;
+	private final List<Object> pool = new ArrayList<Object>(); // constant pool entries
+	private final Map<Object, Integer> pool_index = new HashMap<Object, Integer>();
+
+	// code of the current method
+	private byte[] code;
+	private int length;
+	private int[] labels; // code offsets of labels
+	private int nlabels;
+	private List<int[]> jumps; // (instruction offset, label) of branches to fix
+
+	private RunCompiler(RunAutomaton automaton) {
+		this.automaton = automaton;
+	}
+
+	/**
+	 * Returns the compiled run methods of the given automaton, null if the 
+	 * automaton is too large or hidden classes are not available.
+	 */
+	static CompiledRun compile(RunAutomaton a) {
+		if (DEFINE == null || a.getSize() > MAX_STATES)
+			return null;
+		try {
+			byte[] b = new RunCompiler(a).getClassFile();
+			if (b == null)
+				return null;
+			Class<?> c = (Class<?>)DEFINE.invoke(null, (Object)b);
+			return (CompiledRun)c.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the method that defines a hidden class, null if not available.
+	 */
+	private static Method getDefineMethod() {
+		try {
+			return Class.forName("dk.brics.automaton.HiddenClasses").getDeclaredMethod("define", byte[].class);
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the class file, null if a method is too large.
+	 */
+	private byte[] getClassFile() throws IOException {
+		int this_class = getClass("dk/brics/automaton/CompiledRunAutomaton");
+		int super_class = getClass("java/lang/Object");
+		int interface_class = getClass("dk/brics/automaton/CompiledRun");
+		byte[] init = getInit();
+		byte[] run = getRun(false);
+		byte[] run_offset = getRun(true);
+		if (run == null || run_offset == null)
+			return null;
+		int code_name = getUtf8("Code");
+		int[] names = {getUtf8("<init>"), getUtf8("run"), getUtf8("run")};
+		int[] descriptors = {getUtf8("()V"), getUtf8("(Ljava/lang/String;)Z"), getUtf8("(Ljava/lang/String;I)I")};
+		byte[][] codes = {init, run, run_offset};
+		int[] max_locals = {1, 5, 7};
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xcafebabe);
+		out.writeShort(0);
+		out.writeShort(49);
+		out.writeShort(pool.size() + 1);
+		for (Object o : pool) {
+			if (o instanceof String) {
+				out.writeByte(1);
+				out.writeUTF((String)o);
+			} else if (o instanceof Integer) {
+				out.writeByte(3);
+				out.writeInt((Integer)o);
+			} else {
+				int[] e = (int[])o;
+				out.writeByte(e[0]);
+				for (int i = 1; i < e.length; i++)
+					out.writeShort(e[i]);
+			}
+		}
+		out.writeShort(0x0031); // public final super
+		out.writeShort(this_class);
+		out.writeShort(super_class);
+		out.writeShort(1);
+		out.writeShort(interface_class);
+		out.writeShort(0);
+		out.writeShort(3);
+		for (int m = 0; m < 3; m++) {
+			out.writeShort(0x0001); // public
+			out.writeShort(names[m]);
+			out.writeShort(descriptors[m]);
+			out.writeShort(1);
+			out.writeShort(code_name);
+			out.writeInt(12 + codes[m].length);
+			out.writeShort(2);
+			out.writeShort(max_locals[m]);
+			out.writeInt(codes[m].length);
+			out.write(codes[m]);
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+		out.writeShort(0);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns the code of the constructor.
+	 */
+	private byte[] getInit() {
+		start();
+		load(ALOAD, 0);
+		emit(INVOKESPECIAL);
+		emit2(getMethod("java/lang/Object", "<init>", "()V"));
+		emit(RETURN);
+		return end();
+	}
+
+	/**
+	 * Returns the code of <code>run(String)</code>, or of 
+	 * <code>run(String, int)</code> if <code>longest</code> is set.
+	 * Returns null if the code is too large.
+	 */
+	private byte[] getRun(boolean longest) {
+		int size = automaton.getSize();
+		char[] points = automaton.getCharIntervals();
+		int length_method = getMethod("java/lang/String", "length", "()I");
+		int charat_method = getMethod("java/lang/String", "charAt", "(I)C");
+		start();
+		int dead = size;
+		nlabels = size + 1;
+		// labels 0..size-1 are the states, label size returns the result for a dead run
+		load(ALOAD, S);
+		emit(INVOKEVIRTUAL);
+		emit2(length_method);
+		load(ISTORE, LENGTH);
+		if (longest) {
+			load(ILOAD, I);
+			load(ISTORE, OFFSET);
+			push(-1);
+			load(ISTORE, MAX);
+			load(ILOAD, I);
+			load(ILOAD, LENGTH);
+			jump(IF_ICMPGT, dead);
+		} else {
+			push(0);
+			load(ISTORE, I);
+		}
+		jump(GOTO, automaton.getInitialState());
+		int[] min = new int[points.length];
+		int[] to = new int[points.length];
+		for (int p = 0; p < size; p++) {
+			setLabel(p);
+			if (automaton.isAbsorbing(p)) {
+				// all continuations are accepted
+				if (longest) {
+					load(ILOAD, LENGTH);
+					load(ILOAD, OFFSET);
+					emit(ISUB);
+				} else
+					push(1);
+				emit(IRETURN);
+				continue;
+			}
+			if (longest && automaton.isAccept(p)) {
+				load(ILOAD, I);
+				load(ILOAD, OFFSET);
+				emit(ISUB);
+				load(ISTORE, MAX);
+			}
+			int read = nlabels++;
+			load(ILOAD, I);
+			load(ILOAD, LENGTH);
+			jump(IF_ICMPLT, read);
+			if (longest)
+				load(ILOAD, MAX);
+			else
+				push(automaton.isAccept(p) ? 1 : 0);
+			emit(IRETURN);
+			setLabel(read);
+			load(ALOAD, S);
+			load(ILOAD, I);
+			emit(INVOKEVIRTUAL);
+			emit2(charat_method);
+			load(ISTORE, C);
+			emit(IINC);
+			emit(I);
+			emit(1);
+			// intervals with the same destination are merged
+			int n = 0;
+			for (int c = 0; c < points.length; c++) {
+				int q = automaton.delta(p, automaton.getIntervalClass(c));
+				if (q == -1)
+					q = dead;
+				if (n == 0 || to[n - 1] != q) {
+					min[n] = points[c];
+					to[n++] = q;
+				}
+			}
+			branch(min, to, 0, n);
+			if (this.length > MAX_CODE)
+				return null;
+		}
+		setLabel(dead);
+		if (longest)
+			load(ILOAD, MAX);
+		else
+			push(0);
+		emit(IRETURN);
+		return end();
+	}
+
+	/**
+	 * Emits a binary search over the intervals <code>a</code>..<code>b</code>-1,
+	 * which cover all chars from <code>min[a]</code>, jumping to the label of
+	 * the destination of the interval that contains the char.
+	 */
+	private void branch(int[] min, int[] to, int a, int b) {
+		if (b - a == 1)
+			jump(GOTO, to[a]);
+		else {
+			int m = (a + b) >>> 1;
+			int low = nlabels++;
+			load(ILOAD, C);
+			push(min[m]);
+			jump(IF_ICMPLT, low);
+			branch(min, to, m, b);
+			setLabel(low);
+			branch(min, to, a, m);
+		}
+	}
+
+	private void start() {
+		code = new byte[1024];
+		length = 0;
+		labels = new int[16];
+		nlabels = 0;
+		jumps = new ArrayList<int[]>();
+	}
+
+	/**
+	 * Resolves the jumps and returns the code.
+	 */
+	private byte[] end() {
+		for (int[] j : jumps) {
+			int d = labels[j[1]] - j[0];
+			code[j[0] + 1] = (byte)(d >> 8);
+			code[j[0] + 2] = (byte)d;
+		}
+		byte[] b = new byte[length];
+		System.arraycopy(code, 0, b, 0, length);
+		return b;
+	}
+
+	private void emit(int b) {
+		if (length == code.length) {
+			byte[] c = new byte[2 * length];
+			System.arraycopy(code, 0, c, 0, length);
+			code = c;
+		}
+		code[length++] = (byte)b;
+	}
+
+	private void emit2(int v) {
+		emit(v >> 8);
+		emit(v);
+	}
+
+	private void load(int op, int local) {
+		emit(op);
+		emit(local);
+	}
+
+	private void push(int v) {
+		if (v >= -1 && v <= 5)
+			emit(ICONST_0 + v);
+		else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+			emit(BIPUSH);
+			emit(v);
+		} else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+			emit(SIPUSH);
+			emit2(v);
+		} else {
+			emit(LDC_W);
+			emit2(getConstant(v));
+		}
+	}
+
+	private void jump(int op, int label) {
+		jumps.add(new int[] {length, label});
+		emit(op);
+		emit2(0);
+	}
+
+	private void setLabel(int label) {
+		if (label >= labels.length) {
+			int[] l = new int[Math.max(2 * labels.length, label + 1)];
+			System.arraycopy(labels, 0, l, 0, labels.length);
+			labels = l;
+		}
+		labels[label] = length;
+	}
+
+	private int getEntry(Object key, Object entry) {
+		Integer i = pool_index.get(key);
+		if (i == null) {
+			pool.add(entry);
+			i = pool.size();
+			pool_index.put(key, i);
+		}
+		return i;
+	}
+
+	private int getUtf8(String s) {
+		return getEntry(s, s);
+	}
+
+	private int getConstant(int v) {
+		return getEntry(v, v);
+	}
+
+	private int getClass(String name) {
+		int n = getUtf8(name);
+		return getEntry("class " + name, new int[] {7, n});
+	}
+
+	private int getMethod(String owner, String name, String descriptor) {
+		int c = getClass(owner);
+		int n = getUtf8(name);
+		int d = getUtf8(descriptor);
+		int nt = getEntry("nameandtype " + name + descriptor, new int[] {12, n, d});
+		return getEntry("method " + owner + "." + name + descriptor, new int[] {10, c, nt});
+	}
+}
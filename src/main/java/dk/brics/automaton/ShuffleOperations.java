@@ -57,8 +57,24 @@ final public class ShuffleOperations {
 	 * &lt;<a href="mailto:ruby@daimi.au.dk">ruby@daimi.au.dk</a>&gt;</dd></dl>
 	 */
 	public static Automaton shuffle(Automaton a1, Automaton a2) {
-		a1.determinize();
-		a2.determinize();
+		return shuffle(a1, a2, null);
+	}
+
+	/** 
+	 * Returns an automaton that accepts the shuffle (interleaving) of 
+	 * the languages of the given automata, within the given limits.
+	 * The limits apply to the determinization of each automaton and 
+	 * to the shuffle automaton before dead states are removed.
+	 * As a side-effect, both automata are determinized, if not already deterministic.     
+	 * Never modifies the input automata languages.
+	 * <p>
+	 * Complexity: quadratic in number of states (if already deterministic). 
+	 * @param limits limits on the automata and the time, null if none
+	 * @exception AutomatonLimitException if a limit is exceeded
+	 */
+	public static Automaton shuffle(Automaton a1, Automaton a2, AutomatonLimits limits) {
+		BasicOperations.determinize(a1, limits);
+		BasicOperations.determinize(a2, limits);
 		Transition[][] transitions1 = Automaton.getSortedTransitions(a1.getStates());
 		Transition[][] transitions2 = Automaton.getSortedTransitions(a2.getStates());
 		Automaton c = new Automaton();
@@ -69,10 +85,15 @@ final public class ShuffleOperations {
 		StatePair p = new StatePair(s, a1.initial, a2.initial);
 		worklist.add(p);
 		newstates.put(p, p);
+		long m = 0;
 		while (worklist.size() > 0) {
+			if (limits != null)
+				limits.check(newstates.size(), m);
 			p = worklist.removeFirst();
 			p.s.accept = p.s1.accept && p.s2.accept;
 			Transition[] t1 = transitions1[p.s1.number];
+			Transition[] t2 = transitions2[p.s2.number];
+			m += t1.length + t2.length;
 			for (int n1 = 0; n1 < t1.length; n1++) {
 				StatePair q = new StatePair(t1[n1].to, p.s2);
 				StatePair r = newstates.get(q);
@@ -84,7 +105,6 @@ final public class ShuffleOperations {
 				}
 				p.s.transitions.add(new Transition(t1[n1].min, t1[n1].max, r.s));
 			}
-			Transition[] t2 = transitions2[p.s2.number];
 			for (int n2 = 0; n2 < t2.length; n2++) {
 				StatePair q = new StatePair(p.s1, t2[n2].to);
 				StatePair r = newstates.get(q);
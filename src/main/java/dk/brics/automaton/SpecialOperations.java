@@ -29,6 +29,8 @@
 
 package dk.brics.automaton;
 
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,6 +45,8 @@ final public class SpecialOperations {
 	
 	private SpecialOperations() {}
 
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
 	/**
 	 * Reverses the language of the given (non-singleton) automaton while returning
 	 * the set of new initial states.
@@ -353,6 +357,103 @@ final public class SpecialOperations {
 		return a;
 	}
 	
+	/**
+	 * Returns an automaton over the byte alphabet that accepts the UTF-8
+	 * encodings of the strings accepted by the given automaton.
+	 * <p>
+	 * In the new automaton, each byte is represented by a char in the interval
+	 * u0000-u00ff. A surrogate pair in the given automaton becomes the 4-byte
+	 * encoding of the supplementary code point it denotes; unpaired surrogates
+	 * have no UTF-8 encoding and are dropped.
+	 * Never modifies the input automaton.
+	 */
+	public static Automaton toUtf8(Automaton a) {
+		a = a.cloneExpandedIfRequired();
+		Set<State> states = a.getStates();
+		HashMap<State, State> m = new HashMap<State, State>();
+		for (State s : states) {
+			State p = new State();
+			p.accept = s.accept;
+			m.put(s, p);
+		}
+		for (State s : states) {
+			State p = m.get(s);
+			for (Transition t : s.transitions) {
+				if (t.min < '\ud800')
+					addUtf8Range(p, t.min, t.max < '\ud800' ? t.max : 0xd7ff, m.get(t.to));
+				if (t.max > '\udfff')
+					addUtf8Range(p, t.min > '\udfff' ? t.min : 0xe000, t.max, m.get(t.to));
+				int hmin = t.min > '\ud800' ? t.min : 0xd800;
+				int hmax = t.max < '\udbff' ? t.max : 0xdbff;
+				if (hmin <= hmax)
+					for (Transition u : t.to.transitions) {
+						int lmin = u.min > '\udc00' ? u.min : 0xdc00;
+						int lmax = u.max < '\udfff' ? u.max : 0xdfff;
+						if (lmin > lmax)
+							continue;
+						if (lmin == 0xdc00 && lmax == 0xdfff)
+							addUtf8Range(p, Character.toCodePoint((char)hmin, (char)lmin), 
+									Character.toCodePoint((char)hmax, (char)lmax), m.get(u.to));
+						else
+							for (int h = hmin; h <= hmax; h++)
+								addUtf8Range(p, Character.toCodePoint((char)h, (char)lmin), 
+										Character.toCodePoint((char)h, (char)lmax), m.get(u.to));
+					}
+			}
+		}
+		Automaton b = new Automaton();
+		b.initial = m.get(a.initial);
+		b.deterministic = false;
+		b.removeDeadTransitions();
+		b.checkMinimizeAlways();
+		return b;
+	}
+
+	/**
+	 * Adds paths from <code>p</code> to <code>q</code> that read the UTF-8
+	 * encodings of the code points in the given interval. The interval is split
+	 * into subintervals whose encodings have the same length and differ only in
+	 * a range of values at each byte position.
+	 */
+	private static void addUtf8Range(State p, int min, int max, State q) {
+		if (min > max)
+			return;
+		for (int limit : new int[] {0x7f, 0x7ff, 0xffff})
+			if (min <= limit && limit < max) {
+				addUtf8Range(p, min, limit, q);
+				addUtf8Range(p, limit + 1, max, q);
+				return;
+			}
+		if (max > 0x7f)
+			for (int i = 1; i < 4; i++) {
+				int mask = (1 << (6 * i)) - 1;
+				if ((min & ~mask) != (max & ~mask)) {
+					if ((min & mask) != 0) {
+						addUtf8Range(p, min, min | mask, q);
+						addUtf8Range(p, (min | mask) + 1, max, q);
+						return;
+					}
+					if ((max & mask) != mask) {
+						addUtf8Range(p, min, (max & ~mask) - 1, q);
+						addUtf8Range(p, max & ~mask, max, q);
+						return;
+					}
+				}
+			}
+		byte[] lo = new String(Character.toChars(min)).getBytes(UTF_8);
+		byte[] hi = new String(Character.toChars(max)).getBytes(UTF_8);
+		State s = p;
+		for (int i = 0; i < lo.length; i++) {
+			State r;
+			if (i + 1 == lo.length)
+				r = q;
+			else
+				r = new State();
+			s.transitions.add(new Transition((char)(lo[i] & 0xff), (char)(hi[i] & 0xff), r));
+			s = r;
+		}
+	}
+	
 	/**
 	 * Returns an automaton with projected alphabet. The new automaton accepts
 	 * all strings that are projections of strings accepted by the given automaton
@@ -554,6 +655,191 @@ final public class SpecialOperations {
 		return b.toString();
 	}
 	
+	/**
+	 * Returns a string that is a substring of all accepted strings.
+	 * The string is read off a chain of single-character transitions
+	 * starting in a state that every accepting run passes through,
+	 * so it is not necessarily the longest such string.
+	 * @return common substring, the empty string if none is found
+	 */
+	public static String getCommonFactor(Automaton a) {
+		if (a.isSingleton())
+			return a.singleton;
+		Set<State> states = a.getStates();
+		Automaton.setStateNumbers(states);
+		int n = states.size();
+		boolean[] accept = new boolean[n];
+		int[] first = new int[n + 1];
+		for (State s : states) {
+			accept[s.number] = s.accept;
+			first[s.number + 1] = s.transitions.size();
+		}
+		for (int v = 0; v < n; v++)
+			first[v + 1] += first[v];
+		int[] to = new int[first[n]];
+		char[] min = new char[first[n]];
+		char[] max = new char[first[n]];
+		for (State s : states) {
+			int e = first[s.number];
+			for (Transition t : s.transitions) {
+				to[e] = t.to.number;
+				min[e] = t.min;
+				max[e] = t.max;
+				e++;
+			}
+		}
+		return getCommonFactor(a.initial.number, accept, first, to, min, max);
+	}
+
+	/**
+	 * Returns a common factor as {@link #getCommonFactor(Automaton)} for an 
+	 * automaton with states 0..<code>accept.length</code>-1, where the transitions
+	 * of state <code>v</code> are numbered <code>first[v]</code>..<code>first[v+1]</code>-1
+	 * and transition <code>e</code> goes to <code>to[e]</code> on <code>min[e]</code>..<code>max[e]</code>.
+	 */
+	static String getCommonFactor(int initial, boolean[] accept, int[] first, int[] to, char[] min, char[] max) {
+		// node n is a sink reached from all accept states
+		int n = accept.length;
+		int[][] succ = new int[n + 1][];
+		for (int v = 0; v < n; v++) {
+			int[] w = new int[first[v + 1] - first[v] + (accept[v] ? 1 : 0)];
+			int k = 0;
+			for (int e = first[v]; e < first[v + 1]; e++)
+				w[k++] = to[e];
+			if (accept[v])
+				w[k++] = n;
+			succ[v] = w;
+		}
+		succ[n] = new int[0];
+		int[][] pred = predecessors(succ);
+		// a state is live if the sink is reachable from it
+		boolean[] live = new boolean[n + 1];
+		int[] worklist = new int[n + 1];
+		int wl = 0;
+		live[n] = true;
+		worklist[wl++] = n;
+		while (wl > 0)
+			for (int u : pred[worklist[--wl]])
+				if (!live[u]) {
+					live[u] = true;
+					worklist[wl++] = u;
+				}
+		if (!live[initial])
+			return "";
+		for (int v = 0; v < n; v++) {
+			int k = 0;
+			for (int w : succ[v])
+				if (live[w])
+					k++;
+			if (k < succ[v].length) {
+				int[] w = new int[k];
+				k = 0;
+				for (int u : succ[v])
+					if (live[u])
+						w[k++] = u;
+				succ[v] = w;
+			}
+		}
+		pred = predecessors(succ);
+		// depth-first postorder
+		int[] po = new int[n + 1];
+		int[] order = new int[n + 1];
+		int[] stack = new int[n + 1];
+		int[] pos = new int[n + 1];
+		boolean[] visited = new boolean[n + 1];
+		int k = 0, sp = 0;
+		stack[sp++] = initial;
+		visited[initial] = true;
+		while (sp > 0) {
+			int v = stack[sp - 1];
+			if (pos[v] < succ[v].length) {
+				int w = succ[v][pos[v]++];
+				if (!visited[w]) {
+					visited[w] = true;
+					stack[sp++] = w;
+				}
+			} else {
+				sp--;
+				po[v] = k;
+				order[k++] = v;
+			}
+		}
+		// immediate dominators (Cooper, Harvey and Kennedy)
+		int[] idom = new int[n + 1];
+		Arrays.fill(idom, -1);
+		idom[initial] = initial;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = k - 2; i >= 0; i--) {
+				int v = order[i];
+				int d = -1;
+				for (int u : pred[v])
+					if (idom[u] != -1) {
+						if (d == -1)
+							d = u;
+						else {
+							int x = u;
+							while (x != d) {
+								while (po[x] < po[d])
+									x = idom[x];
+								while (po[d] < po[x])
+									d = idom[d];
+							}
+						}
+					}
+				if (idom[v] != d) {
+					idom[v] = d;
+					changed = true;
+				}
+			}
+		}
+		// follow forced chars from each state that dominates the sink
+		String factor = "";
+		int[] seen = new int[n];
+		Arrays.fill(seen, -1);
+		for (int d = idom[n];; d = idom[d]) {
+			StringBuilder b = new StringBuilder();
+			int v = d;
+			while (!accept[v] && seen[v] != d) {
+				seen[v] = d;
+				int f = -1;
+				int m = 0;
+				for (int e = first[v]; e < first[v + 1]; e++)
+					if (live[to[e]]) {
+						f = e;
+						m++;
+					}
+				if (m != 1 || min[f] != max[f])
+					break;
+				b.append(min[f]);
+				v = to[f];
+			}
+			if (b.length() > factor.length())
+				factor = b.toString();
+			if (d == initial)
+				break;
+		}
+		return factor;
+	}
+
+	/**
+	 * Returns the predecessor lists of the graph with the given successor lists.
+	 */
+	private static int[][] predecessors(int[][] succ) {
+		int[] npred = new int[succ.length];
+		for (int[] w : succ)
+			for (int u : w)
+				npred[u]++;
+		int[][] pred = new int[succ.length][];
+		for (int v = 0; v < succ.length; v++)
+			pred[v] = new int[npred[v]];
+		for (int v = 0; v < succ.length; v++)
+			for (int u : succ[v])
+				pred[u][--npred[u]] = v;
+		return pred;
+	}
+	
 	/**
 	 * Prefix closes the given automaton.
 	 */
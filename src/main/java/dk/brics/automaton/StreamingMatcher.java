@@ -0,0 +1,204 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A matcher that finds the matches of a compiled automaton in input that 
+ * arrives in chunks.
+ * <p>
+ * The input is given with {@link #feed(char[], int, int)} as it arrives, and
+ * {@link #finish()} is called at the end of the input. Matches are reported to
+ * a {@link MatchListener} as soon as they are known, with offsets counted from
+ * the start of the stream, and with the same leftmost-longest semantics as
+ * {@link AutomatonMatcher#find()}. The automaton state and the start of the
+ * current match attempt are kept between calls, and only the characters that
+ * a later match attempt may still read are buffered. Once the current match 
+ * is known to extend to the end of the input, no characters are buffered.
+ * <p>
+ * A <code>StreamingMatcher</code> is not thread-safe.
+ * @see RunAutomaton#newStreamingMatcher(MatchListener)
+ */
+public class StreamingMatcher {
+
+	private final RunAutomaton automaton;
+	private final MatchListener listener;
+	private final FirstCharFilter filter;
+
+	private char[] buffer; // buffer[0..tail-1] holds the input from stream offset base
+	private long base; // stream offset of buffer[0]
+	private int tail; // buffer index after the last char fed
+	private int pos; // buffer index of the next char to read in the current attempt
+	private long start; // stream offset of the start of the current attempt
+	private long end; // stream offset of the end of the longest match in the current attempt, -1 if none
+	private int state; // automaton state in the current attempt
+	private boolean finished;
+
+	StreamingMatcher(RunAutomaton automaton, MatchListener listener) {
+		this.automaton = automaton;
+		this.listener = listener;
+		filter = automaton.getFirstCharFilter();
+		reset();
+	}
+
+	/**
+	 * Resets this matcher to the start of a new stream.
+	 */
+	public void reset() {
+		if (buffer == null)
+			buffer = new char[1024];
+		base = start = 0;
+		tail = pos = 0;
+		state = automaton.getInitialState();
+		end = automaton.isAccept(state) ? 0 : -1;
+		finished = false;
+	}
+
+	/**
+	 * Returns the number of chars fed since the start of the stream.
+	 */
+	public long getOffset() {
+		return base + tail;
+	}
+
+	/**
+	 * Returns the number of chars currently buffered, that is, the chars 
+	 * that a later match attempt may still read.
+	 */
+	public int getBuffered() {
+		return tail - getKept();
+	}
+
+	/**
+	 * Returns the buffer index of the first char that a later match attempt 
+	 * may read. The next attempt starts after the current match, or after 
+	 * the start of the current attempt if there is no match.
+	 */
+	private int getKept() {
+		long keep = end == -1 ? start : Math.max(end, start + 1);
+		return (int)(Math.min(keep, base + tail) - base);
+	}
+
+	/**
+	 * Feeds the next chunk of input. Matches that are completed by the chunk
+	 * are reported before returning.
+	 * @param chars array holding the chunk
+	 * @param offset index of the first char of the chunk
+	 * @param length number of chars in the chunk
+	 * @exception IllegalStateException if {@link #finish()} has been called since
+	 *            the last reset
+	 */
+	public void feed(char[] chars, int offset, int length) throws IllegalStateException {
+		if (finished)
+			throw new IllegalStateException("stream is finished");
+		int k = getKept();
+		if (k > 0) {
+			System.arraycopy(buffer, k, buffer, 0, tail - k);
+			base += k;
+			tail -= k;
+			pos -= k;
+		}
+		if (tail + length > buffer.length) {
+			char[] b = new char[Math.max(2 * buffer.length, tail + length)];
+			System.arraycopy(buffer, 0, b, 0, tail);
+			buffer = b;
+		}
+		System.arraycopy(chars, offset, buffer, tail, length);
+		tail += length;
+		match(false);
+	}
+
+	/**
+	 * Feeds all remaining input of the given reader. 
+	 * The reader is not closed, and {@link #finish()} is not called.
+	 * @param reader input
+	 * @exception IOException if input/output related exception occurs
+	 */
+	public void feed(Reader reader) throws IOException {
+		char[] chunk = new char[8192];
+		int n;
+		while ((n = reader.read(chunk)) != -1)
+			feed(chunk, 0, n);
+	}
+
+	/**
+	 * Marks the end of the input and reports the remaining matches.
+	 * @exception IllegalStateException if {@link #finish()} has been called since
+	 *            the last reset
+	 */
+	public void finish() throws IllegalStateException {
+		if (finished)
+			throw new IllegalStateException("stream is finished");
+		finished = true;
+		match(true);
+	}
+
+	/**
+	 * Runs the automaton over the buffered input and reports the completed
+	 * matches. If <code>last</code> is set, the input is complete.
+	 */
+	private void match(boolean last) {
+		while (true) {
+			if (pos == start - base && filter != null) {
+				pos = filter.next(buffer, pos, tail);
+				start = base + pos;
+			}
+			int p = state;
+			while (pos < tail) {
+				if (automaton.isAbsorbing(p)) {
+					// all continuations match, so the match extends to the end of the input
+					pos = tail;
+					end = base + tail;
+					break;
+				}
+				p = automaton.step(p, buffer[pos++]);
+				if (p == -1)
+					break;
+				if (automaton.isAccept(p))
+					end = base + pos;
+			}
+			state = p;
+			if (p != -1 && !last)
+				return;
+			if (end != -1) {
+				listener.match(start, end);
+				start = (end == start) ? start + 1 : end;
+			} else
+				start++;
+			if (start > base + tail)
+				return;
+			pos = (int)(start - base);
+			state = automaton.getInitialState();
+			end = automaton.isAccept(state) ? start : -1;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package dk.brics.automaton;
+
+import java.util.Arrays;
+
+/**
+ * Boyer-Moore-Horspool search for a fixed nonempty string in a character sequence.
+ * The shift tables are indexed by the low 8 bits of each char.
+ */
+final class StringSearch {
+
+	final String pattern;
+	private final int[] shift; // shift when scanning forward
+	private final int[] backshift; // shift when scanning backward
+
+	StringSearch(String pattern) {
+		this.pattern = pattern;
+		int m = pattern.length();
+		shift = new int[256];
+		backshift = new int[256];
+		Arrays.fill(shift, m);
+		Arrays.fill(backshift, m);
+		for (int i = 0; i < m - 1; i++)
+			shift[pattern.charAt(i) & 0xff] = m - 1 - i;
+		for (int i = m - 1; i > 0; i--)
+			backshift[pattern.charAt(i) & 0xff] = i;
+	}
+
+	/**
+	 * Returns the first index at or after <code>from</code> where the pattern
+	 * occurs in <code>s</code> and ends at or before <code>to</code>, -1 if none.
+	 */
+	int indexOf(CharSequence s, int from, int to) {
+		int last = pattern.length() - 1;
+		if (s instanceof String && to == s.length()) // String.indexOf scans to the end
+			return ((String)s).indexOf(pattern, from);
+		char c = pattern.charAt(last);
+		for (int i = Math.max(from, 0) + last; i < to; i += shift[s.charAt(i) & 0xff])
+			if (s.charAt(i) == c) {
+				int j = last - 1;
+				int k = i - 1;
+				while (j >= 0 && s.charAt(k) == pattern.charAt(j)) {
+					j--;
+					k--;
+				}
+				if (j < 0)
+					return k + 1;
+			}
+		return -1;
+	}
+
+	/**
+	 * Returns the last index at or after <code>from</code> where the pattern 
+	 * occurs in <code>s</code> and ends at or before <code>to</code>, -1 if none.
+	 */
+	int lastIndexOf(CharSequence s, int from, int to) {
+		int m = pattern.length();
+		char c = pattern.charAt(0);
+		for (int i = to - m; i >= from; i -= backshift[s.charAt(i) & 0xff])
+			if (s.charAt(i) == c) {
+				int j = 1;
+				while (j < m && s.charAt(i + j) == pattern.charAt(j))
+					j++;
+				if (j == m)
+					return i;
+			}
+		return -1;
+	}
+}
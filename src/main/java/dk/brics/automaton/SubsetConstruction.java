@@ -0,0 +1,603 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2011 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Subset construction on a numbered copy of a nondeterministic automaton.
+ * <p>
+ * The states and transitions are kept in int arrays, and each set of states 
+ * is a sorted int array. The successor sets of a set are found in one sweep 
+ * over the start and end points of the transitions of its members, so sets
+ * are only compared and hashed where the successors change.
+ */
+final class SubsetConstruction {
+
+	final char[] points; // char interval start points
+	final boolean[] accept;
+	final int[] initial; // sorted set of initial states
+	final int[] first; // transitions of state q are first[q]..first[q+1]-1
+	final int[] from_class; // first char class of each transition
+	final int[] to_class; // last char class of each transition
+	final int[] dest; // destination state of each transition
+
+	static final int PARALLEL_BATCH = 16; // maximal number of sets expanded by one task
+
+	// sets found by determinize, numbered in the order they are found
+	private int count;
+	private int[][] sets;
+	private int[] hashes;
+	private int[] table; // open addressing hash table from set to number + 1
+
+	// sets found by determinizeParallel, numbered when they are added
+	private ConcurrentHashMap<SetKey, SetKey> keys;
+	private AtomicInteger counter; // next number
+	private ConcurrentLinkedQueue<SetKey> found; // sets added in the current level
+	private ConcurrentLinkedQueue<Sweeper> sweepers; // sweepers not in use
+	private SetKey[][] successors; // successors of each set
+	private char[][] smin; // min char of the transition to each successor
+	private char[][] smax; // max char of the transition to each successor
+	private boolean[] accepting; // acceptance of each set
+	private AutomatonLimits limits; // limits checked by the tasks, null if none
+
+	/**
+	 * Constructs a numbered copy of the states that are reachable from the 
+	 * given initial states. The numbers of these states are updated.
+	 */
+	SubsetConstruction(Set<State> initialset) {
+		Set<State> states = new HashSet<State>(initialset);
+		LinkedList<State> worklist = new LinkedList<State>(initialset);
+		while (worklist.size() > 0) {
+			State s = worklist.removeFirst();
+			for (Transition t : s.transitions)
+				if (states.add(t.to))
+					worklist.add(t.to);
+		}
+		points = Automaton.getStartPoints(states);
+		Transition[][] transitions = Automaton.getSortedTransitions(states);
+		int n = states.size();
+		accept = new boolean[n];
+		first = new int[n + 1];
+		int m = 0;
+		for (State s : states) {
+			accept[s.number] = s.accept;
+			m += s.transitions.size();
+		}
+		from_class = new int[m];
+		to_class = new int[m];
+		dest = new int[m];
+		m = 0;
+		for (int q = 0; q < n; q++) {
+			first[q] = m;
+			for (Transition t : transitions[q]) {
+				from_class[m] = SpecialOperations.findIndex(t.min, points);
+				to_class[m] = SpecialOperations.findIndex(t.max, points);
+				dest[m] = t.to.number;
+				m++;
+			}
+		}
+		first[n] = m;
+		int[] init = new int[initialset.size()];
+		m = 0;
+		for (State s : initialset)
+			init[m++] = s.number;
+		Arrays.sort(init);
+		initial = init;
+	}
+
+	/**
+	 * Returns true if the given set contains an accept state.
+	 */
+	boolean isAccept(int[] set) {
+		for (int q : set)
+			if (accept[q])
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the max char of the interval of the given char class.
+	 */
+	char getMax(int c) {
+		if (c + 1 < points.length)
+			return (char)(points[c + 1] - 1);
+		else
+			return Character.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the hash code of <code>set[from]</code>..<code>set[to]</code>-1,
+	 * the same as {@link Arrays#hashCode(int[])} of a copy of the range.
+	 */
+	static int hashCode(int[] set, int from, int to) {
+		int h = 1;
+		for (int i = from; i < to; i++)
+			h = 31 * h + set[i];
+		return h;
+	}
+
+	/**
+	 * Returns true if the given set equals <code>b[from]</code>..<code>b[to]</code>-1.
+	 */
+	static boolean equals(int[] set, int[] b, int from, int to) {
+		if (set.length != to - from)
+			return false;
+		for (int i = 0; i < set.length; i++)
+			if (set[i] != b[from + i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Replaces the given automaton by a deterministic automaton with a state for 
+	 * each set of states that is reachable from the initial set. Transitions to 
+	 * sets from which no accept state is reachable are left out, as with 
+	 * {@link Automaton#removeDeadTransitions()}.
+	 * @param limits limits that are checked for each set, null if none
+	 * @exception AutomatonLimitException if a limit is exceeded, the automaton is then unchanged
+	 */
+	void determinize(Automaton a, AutomatonLimits limits) {
+		sets = new int[16][];
+		hashes = new int[16];
+		table = new int[64];
+		count = 0;
+		add(initial, Arrays.hashCode(initial));
+		// transitions of set p are efirst[p]..efirst[p+1]-1
+		int[] efirst = new int[17];
+		int[] eto = new int[16];
+		char[] emin = new char[16];
+		char[] emax = new char[16];
+		boolean[] saccept = new boolean[16];
+		int m = 0;
+		Sweeper w = new Sweeper();
+		for (int p = 0; p < count; p++) {
+			if (limits != null)
+				limits.check(count, m);
+			if (p + 1 == saccept.length) {
+				saccept = Arrays.copyOf(saccept, 2 * saccept.length);
+				efirst = Arrays.copyOf(efirst, saccept.length + 1);
+			}
+			saccept[p] = isAccept(sets[p]);
+			int n = w.sweep(sets[p]);
+			if (m + n > eto.length) {
+				int l = Math.max(2 * eto.length, m + n);
+				eto = Arrays.copyOf(eto, l);
+				emin = Arrays.copyOf(emin, l);
+				emax = Arrays.copyOf(emax, l);
+			}
+			for (int i = 0; i < n; i++) {
+				int from = w.start[i], to = w.start[i + 1];
+				int h = hashCode(w.members, from, to);
+				int q = lookup(w.members, from, to, h);
+				if (q == -1)
+					q = add(Arrays.copyOfRange(w.members, from, to), h);
+				eto[m] = q;
+				emin[m] = points[w.lo[i]];
+				emax[m] = getMax(w.hi[i]);
+				m++;
+			}
+			efirst[p + 1] = m;
+		}
+		int n = count;
+		sets = null;
+		hashes = null;
+		table = null;
+		build(a, n, efirst, eto, emin, emax, saccept);
+	}
+
+	/**
+	 * Replaces the given automaton by the deterministic automaton with 
+	 * <code>n</code> states, where the transitions of state p are 
+	 * <code>efirst[p]</code>..<code>efirst[p+1]</code>-1 and transition 
+	 * e goes to <code>eto[e]</code> on <code>emin[e]</code>..<code>emax[e]</code>.
+	 * Transitions to states from which no accept state is reachable are left out.
+	 */
+	private void build(Automaton a, int n, int[] efirst, int[] eto, char[] emin, char[] emax, boolean[] saccept) {
+		int m = efirst[n];
+		// live sets reach an accepting set
+		int[] pfirst = new int[n + 1];
+		for (int e = 0; e < m; e++)
+			pfirst[eto[e] + 1]++;
+		for (int p = 0; p < n; p++)
+			pfirst[p + 1] += pfirst[p];
+		int[] pred = new int[m];
+		int[] next = Arrays.copyOf(pfirst, n);
+		for (int p = 0; p < n; p++)
+			for (int e = efirst[p]; e < efirst[p + 1]; e++)
+				pred[next[eto[e]]++] = p;
+		boolean[] live = new boolean[n];
+		int[] worklist = new int[n];
+		int k = 0;
+		for (int p = 0; p < n; p++)
+			if (saccept[p]) {
+				live[p] = true;
+				worklist[k++] = p;
+			}
+		while (k > 0) {
+			int q = worklist[--k];
+			for (int i = pfirst[q]; i < pfirst[q + 1]; i++)
+				if (!live[pred[i]]) {
+					live[pred[i]] = true;
+					worklist[k++] = pred[i];
+				}
+		}
+		State[] newstates = new State[n];
+		for (int p = 0; p < n; p++)
+			if (live[p] || p == 0) {
+				newstates[p] = new State();
+				newstates[p].accept = saccept[p];
+			}
+		for (int p = 0; p < n; p++)
+			if (newstates[p] != null)
+				for (int e = efirst[p]; e < efirst[p + 1]; e++)
+					if (live[eto[e]])
+						newstates[p].transitions.add(new Transition(emin[e], emax[e], newstates[eto[e]]));
+		a.initial = newstates[0];
+		a.deterministic = true;
+		a.clearHashCode();
+	}
+
+	/**
+	 * Replaces the given automaton by the same deterministic automaton as 
+	 * {@link #determinize(Automaton, AutomatonLimits)}, up to the numbering of the states. 
+	 * The sets are found level by level, and the successors of the sets of 
+	 * each level are found in parallel in the common fork-join pool.
+	 * The interrupt status of the calling thread is checked between levels.
+	 * @param limits limits that are checked for each set, null if none
+	 * @exception AutomatonLimitException if a limit is exceeded, the automaton is then unchanged
+	 */
+	void determinizeParallel(Automaton a, AutomatonLimits limits) {
+		this.limits = limits;
+		keys = new ConcurrentHashMap<SetKey, SetKey>();
+		counter = new AtomicInteger(1);
+		found = new ConcurrentLinkedQueue<SetKey>();
+		sweepers = new ConcurrentLinkedQueue<Sweeper>();
+		SetKey init = new SetKey(initial, 0, initial.length, Arrays.hashCode(initial));
+		init.id = 0;
+		keys.put(init, init);
+		sets = new int[][] {initial};
+		successors = new SetKey[1][];
+		smin = new char[1][];
+		smax = new char[1][];
+		accepting = new boolean[1];
+		int lo = 0, hi = 1;
+		long m = 0;
+		while (lo < hi) {
+			if (limits != null)
+				limits.check(hi, m);
+			ForkJoinPool.commonPool().invoke(new Expand(lo, hi));
+			for (int p = lo; p < hi; p++)
+				m += successors[p].length;
+			lo = hi;
+			hi = counter.get();
+			if (hi > sets.length) {
+				int l = Math.max(2 * sets.length, hi);
+				sets = Arrays.copyOf(sets, l);
+				successors = Arrays.copyOf(successors, l);
+				smin = Arrays.copyOf(smin, l);
+				smax = Arrays.copyOf(smax, l);
+				accepting = Arrays.copyOf(accepting, l);
+			}
+			for (SetKey k = found.poll(); k != null; k = found.poll())
+				sets[k.id] = k.set;
+		}
+		int n = hi;
+		int[] efirst = new int[n + 1];
+		for (int p = 0; p < n; p++)
+			efirst[p + 1] = efirst[p] + successors[p].length;
+		int[] eto = new int[efirst[n]];
+		char[] emin = new char[efirst[n]];
+		char[] emax = new char[efirst[n]];
+		for (int p = 0; p < n; p++)
+			for (int i = 0; i < successors[p].length; i++) {
+				eto[efirst[p] + i] = successors[p][i].id;
+				emin[efirst[p] + i] = smin[p][i];
+				emax[efirst[p] + i] = smax[p][i];
+			}
+		boolean[] acc = accepting;
+		keys = null;
+		found = null;
+		sweepers = null;
+		sets = null;
+		successors = null;
+		smin = null;
+		smax = null;
+		accepting = null;
+		this.limits = null;
+		build(a, n, efirst, eto, emin, emax, acc);
+	}
+
+	/**
+	 * Finds the successors of the sets <code>lo</code>..<code>hi</code>-1, 
+	 * splitting them in halves.
+	 */
+	private class Expand extends RecursiveAction {
+
+		static final long serialVersionUID = 10001;
+
+		final int lo, hi;
+
+		Expand(int lo, int hi) {
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= PARALLEL_BATCH) {
+				Sweeper w = sweepers.poll();
+				if (w == null)
+					w = new Sweeper();
+				for (int p = lo; p < hi; p++)
+					expand(p, w);
+				sweepers.add(w);
+			} else {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new Expand(lo, mid), new Expand(mid, hi));
+			}
+		}
+	}
+
+	/**
+	 * Finds the successors of set p, adding the new ones to <code>keys</code> 
+	 * and <code>found</code>.
+	 */
+	private void expand(int p, Sweeper w) {
+		if (limits != null)
+			limits.check(counter.get(), 0);
+		accepting[p] = isAccept(sets[p]);
+		int n = w.sweep(sets[p]);
+		SetKey[] succ = new SetKey[n];
+		char[] min = new char[n];
+		char[] max = new char[n];
+		for (int i = 0; i < n; i++) {
+			int from = w.start[i], to = w.start[i + 1];
+			SetKey probe = w.probe;
+			probe.set = w.members;
+			probe.from = from;
+			probe.to = to;
+			probe.hash = hashCode(w.members, from, to);
+			SetKey k = keys.get(probe);
+			if (k == null) {
+				SetKey nk = new SetKey(Arrays.copyOfRange(w.members, from, to), 0, to - from, probe.hash);
+				k = keys.putIfAbsent(nk, nk);
+				if (k == null) {
+					k = nk;
+					nk.id = counter.getAndIncrement();
+					found.add(nk);
+				}
+			}
+			succ[i] = k;
+			min[i] = points[w.lo[i]];
+			max[i] = getMax(w.hi[i]);
+		}
+		successors[p] = succ;
+		smin[p] = min;
+		smax[p] = max;
+	}
+
+	/**
+	 * Set of states as a hash key: <code>set[from]</code>..<code>set[to]</code>-1. 
+	 * The keys in the table own their set, and the keys used for lookups 
+	 * refer to the scratch space of a sweeper.
+	 */
+	static final class SetKey {
+
+		int[] set;
+		int from, to;
+		int hash;
+		int id = -1; // number of the set, assigned when added
+
+		SetKey(int[] set, int from, int to, int hash) {
+			this.set = set;
+			this.from = from;
+			this.to = to;
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SetKey))
+				return false;
+			SetKey k = (SetKey)obj;
+			if (hash != k.hash || to - from != k.to - k.from)
+				return false;
+			for (int i = 0; i < to - from; i++)
+				if (set[from + i] != k.set[k.from + i])
+					return false;
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the number of the set <code>b[from]</code>..<code>b[to]</code>-1
+	 * with the given hash code, -1 if not found.
+	 */
+	private int lookup(int[] b, int from, int to, int h) {
+		int mask = table.length - 1;
+		for (int i = h & mask; table[i] != 0; i = (i + 1) & mask) {
+			int p = table[i] - 1;
+			if (hashes[p] == h && equals(sets[p], b, from, to))
+				return p;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds the given set with the given hash code, which must not be found already.
+	 * Returns its number.
+	 */
+	private int add(int[] set, int h) {
+		int p = count++;
+		if (p == hashes.length) {
+			sets = Arrays.copyOf(sets, 2 * p);
+			hashes = Arrays.copyOf(hashes, 2 * p);
+		}
+		sets[p] = set;
+		hashes[p] = h;
+		if (2 * count > table.length) {
+			table = new int[2 * table.length];
+			for (int q = 0; q < p; q++)
+				insert(q);
+		}
+		insert(p);
+		return p;
+	}
+
+	/**
+	 * Inserts the set with the given number in the hash table.
+	 */
+	private void insert(int p) {
+		int mask = table.length - 1;
+		int i = hashes[p] & mask;
+		while (table[i] != 0)
+			i = (i + 1) & mask;
+		table[i] = p + 1;
+	}
+
+	/**
+	 * Finds the successor sets of sets of states. A sweeper has scratch space 
+	 * of its own, so each thread needs a separate one.
+	 */
+	final class Sweeper {
+
+		int[] lo = new int[16]; // first char class of each successor set
+		int[] hi = new int[16]; // last char class of each successor set
+		int[] start = new int[17]; // successor set i is members[start[i]]..members[start[i+1]]-1
+		int[] members = new int[16];
+
+		private final int[] active; // number of transitions to each state that cover the current class
+		private final int[] mark;
+		private int generation;
+		private final int[] targets; // sorted destinations of the transitions from the set
+		private long[] events = new long[16]; // class << 32 | state << 1 | 1 if entering the state
+		final SetKey probe = new SetKey(null, 0, 0, 0); // key for lookups in members
+
+		Sweeper() {
+			active = new int[accept.length];
+			mark = new int[accept.length];
+			targets = new int[accept.length];
+		}
+
+		/**
+		 * Finds the nonempty successor sets of the given set of states. 
+		 * Successor set i is reached on the chars of the classes 
+		 * <code>lo[i]</code>..<code>hi[i]</code>, and consecutive classes with 
+		 * the same successor set are merged.
+		 * Returns the number of successor sets.
+		 */
+		int sweep(int[] set) {
+			if (++generation == 0) {
+				Arrays.fill(mark, 0);
+				generation = 1;
+			}
+			int m = 0, k = 0;
+			for (int q : set)
+				for (int t = first[q]; t < first[q + 1]; t++) {
+					if (m + 2 > events.length)
+						events = Arrays.copyOf(events, 2 * events.length);
+					events[m++] = (long)from_class[t] << 32 | dest[t] << 1 | 1;
+					if (to_class[t] + 1 < points.length)
+						events[m++] = (long)(to_class[t] + 1) << 32 | dest[t] << 1;
+					if (mark[dest[t]] != generation) {
+						mark[dest[t]] = generation;
+						targets[k++] = dest[t];
+					}
+				}
+			Arrays.sort(events, 0, m);
+			Arrays.sort(targets, 0, k);
+			int n = 0;
+			for (int e = 0; e < m;) {
+				int c = (int)(events[e] >>> 32);
+				for (; e < m && (int)(events[e] >>> 32) == c; e++) {
+					int q = (int)events[e] >>> 1;
+					if ((events[e] & 1) != 0)
+						active[q]++;
+					else
+						active[q]--;
+				}
+				int d = e < m ? (int)(events[e] >>> 32) - 1 : points.length - 1;
+				// the successor set of classes c..d
+				int from = start[n];
+				if (from + k > members.length)
+					members = Arrays.copyOf(members, Math.max(2 * members.length, from + k));
+				int to = from;
+				for (int i = 0; i < k; i++)
+					if (active[targets[i]] > 0)
+						members[to++] = targets[i];
+				if (to == from)
+					continue;
+				if (n > 0 && hi[n - 1] == c - 1 && sameMembers(start[n - 1], from, to))
+					hi[n - 1] = d;
+				else {
+					if (n + 1 == lo.length) {
+						lo = Arrays.copyOf(lo, 2 * lo.length);
+						hi = Arrays.copyOf(hi, 2 * hi.length);
+						start = Arrays.copyOf(start, lo.length + 1);
+					}
+					lo[n] = c;
+					hi[n] = d;
+					start[++n] = to;
+				}
+			}
+			for (int i = 0; i < k; i++)
+				active[targets[i]] = 0;
+			return n;
+		}
+
+		/**
+		 * Returns true if <code>members[prev]</code>..<code>members[from]</code>-1
+		 * equals <code>members[from]</code>..<code>members[to]</code>-1.
+		 */
+		private boolean sameMembers(int prev, int from, int to) {
+			if (from - prev != to - from)
+				return false;
+			for (int i = 0; i < to - from; i++)
+				if (members[prev + i] != members[from + i])
+					return false;
+			return true;
+		}
+	}
+}